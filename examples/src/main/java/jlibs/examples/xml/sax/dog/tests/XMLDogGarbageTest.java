@@ -0,0 +1,100 @@
+/**
+ * Copyright 2015 Santhosh Kumar Tekuri
+ *
+ * The JLibs authors license this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package jlibs.examples.xml.sax.dog.tests;
+
+import jlibs.xml.DefaultNamespaceContext;
+import jlibs.xml.sax.dog.XMLDog;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Measures bytes allocated and time taken per document by XMLDog,
+ * on a text and comment heavy document, for xpath sets that need
+ * no text, some text, string-values compared with literals and comments.
+ * <p>
+ * allocation is read from {@code com.sun.management.ThreadMXBean},
+ * so it is reported only on JVMs that support it
+ *
+ * @author Santhosh Kumar T
+ */
+public class XMLDogGarbageTest{
+    private static final int ITEMS = 20000;
+
+    private static final int warmupCount = 20;
+    private static final int runCount = 50;
+
+    private static final String XPATH_SETS[][] = {
+        { "count(/root/item)", "/root/item[@type='t1']/@type" },
+        { "/root/item[@type='t1']/name/text()", "/root/item/state" },
+        { "/root/item[name='value-7']/@type", "//desc[1]" },
+        { "//item[.='value-7']", "//item[desc='no such text']", "//item[state/text()='open']/@type" },
+        { "//comment()" },
+    };
+
+    private static byte[] createDocument(){
+        StringBuilder buff = new StringBuilder("<root>");
+        for(int i=0; i<ITEMS; i++){
+            buff.append("<item type=\"t").append(i%5).append("\">")
+                .append("<name>value-").append(i%20).append("</name>")
+                .append("<state>open</state>")
+                .append("<!-- generated item -->")
+                .append("<desc>some descriptive text that is fairly long for item</desc>")
+                .append("</item>\n");
+        }
+        return buff.append("</root>").toString().getBytes();
+    }
+
+    private static XMLDog createXMLDog(String xpaths[]) throws Exception{
+        XMLDog dog = new XMLDog(new DefaultNamespaceContext());
+        for(String xpath: xpaths)
+            dog.addXPath(xpath);
+        return dog.freeze();
+    }
+
+    private static long allocatedBytes(ThreadMXBean threadMXBean){
+        if(threadMXBean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean)threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+
+    public static void main(String[] args) throws Exception{
+        byte doc[] = createDocument();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        System.out.format("Per document over %d runs, document size %d bytes:%n", runCount, doc.length);
+        System.out.format("%10s %10s | %s%n", "KB", "ms", "XPaths");
+        for(String xpaths[]: XPATH_SETS){
+            XMLDog dog = createXMLDog(xpaths);
+            for(int i=0; i<warmupCount; i++)
+                dog.sniff(new InputSource(new ByteArrayInputStream(doc)));
+
+            long allocated = allocatedBytes(threadMXBean);
+            long time = System.nanoTime();
+            for(int i=0; i<runCount; i++)
+                dog.sniff(new InputSource(new ByteArrayInputStream(doc)));
+            time = System.nanoTime()-time;
+            if(allocated!=-1)
+                allocated = allocatedBytes(threadMXBean)-allocated;
+
+            String kb = allocated==-1 ? "n/a" : String.format("%.1f", allocated/1024.0/runCount);
+            System.out.format("%10s %10.2f | %s%n", kb, time/1E06/runCount, Arrays.toString(xpaths));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2015 Santhosh Kumar Tekuri
+ *
+ * The JLibs authors license this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package jlibs.examples.xml.sax.dog.tests;
+
+import jlibs.xml.DefaultNamespaceContext;
+import jlibs.xml.sax.dog.XMLDog;
+import jlibs.xml.sax.dog.XPathResults;
+import jlibs.xml.sax.dog.expr.Expression;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares documents sniffed per second by XMLDog with and without
+ * {@link XMLDog#setSharePrefixes(boolean) shared prefixes}, as number
+ * of routing xpaths grows from 10 to 10000.
+ * <p>
+ * the xpaths are of form {@code /msg/s1/f2/@a3}, with every tenth
+ * one using descendant axis {@code //s1/f2/@a3}. like routing rules,
+ * only some of them match the document sniffed
+ *
+ * @author Santhosh Kumar T
+ */
+public class XMLDogPrefixSharingTest{
+    private static final int SECTIONS = 50;
+    private static final int FIELDS = 20;
+    private static final int ATTRIBUTES = 10;
+
+    /** sections referred by xpaths, only first SECTIONS of them exist in document */
+    private static final int ROUTES = 10*SECTIONS;
+
+    private static final int warmupCount = 20;
+    private static final int runCount = 50;
+
+    private static byte[] createDocument(){
+        StringBuilder buff = new StringBuilder("<msg>");
+        for(int s=0; s<SECTIONS; s++){
+            buff.append("<s").append(s).append('>');
+            for(int f=0; f<FIELDS; f++){
+                buff.append("<f").append(f);
+                for(int a=0; a<ATTRIBUTES; a++)
+                    buff.append(" a").append(a).append("=\"").append(s).append('.').append(f).append('.').append(a).append('"');
+                buff.append("/>");
+            }
+            buff.append("</s").append(s).append('>');
+        }
+        return buff.append("</msg>").toString().getBytes();
+    }
+
+    private static String xpath(int i){
+        int s = i%ROUTES;
+        int f = (i/ROUTES)%FIELDS;
+        int a = i%ATTRIBUTES;
+        return (i%10==0 ? "//s" : "/msg/s")+s+"/f"+f+"/@a"+a;
+    }
+
+    private static XMLDog createXMLDog(int count, boolean share, List<Expression> expressions) throws Exception{
+        XMLDog dog = new XMLDog(new DefaultNamespaceContext());
+        dog.setSharePrefixes(share);
+        for(int i=0; i<count; i++)
+            expressions.add(dog.addXPath(xpath(i)));
+        return dog.freeze();
+    }
+
+    private static String sniff(XMLDog dog, byte doc[], List<Expression> expressions) throws Exception{
+        XPathResults results = dog.sniff(new InputSource(new ByteArrayInputStream(doc)));
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bout);
+        for(Expression expr: expressions)
+            XPathResults.print(ps, expr.getXPath(), results.getResult(expr));
+        ps.flush();
+        return bout.toString();
+    }
+
+    private static long time(XMLDog dog, byte doc[]) throws Exception{
+        for(int i=0; i<warmupCount; i++)
+            dog.sniff(new InputSource(new ByteArrayInputStream(doc)));
+        long time = System.nanoTime();
+        for(int i=0; i<runCount; i++)
+            dog.sniff(new InputSource(new ByteArrayInputStream(doc)));
+        return System.nanoTime()-time;
+    }
+
+    private static double perSecond(long nanos){
+        return runCount*1E09/nanos;
+    }
+
+    public static void main(String[] args) throws Exception{
+        byte doc[] = createDocument();
+        System.out.format("Documents per second over %d runs, document size %d bytes:%n", runCount, doc.length);
+        System.out.format("%6s | %10s %10s %8s%n", "XPaths", "Unshared", "Shared", "Speedup");
+        for(int count=10; count<=10000; count*=10){
+            List<Expression> unsharedExprs = new ArrayList<Expression>(count);
+            XMLDog unshared = createXMLDog(count, false, unsharedExprs);
+            List<Expression> sharedExprs = new ArrayList<Expression>(count);
+            XMLDog shared = createXMLDog(count, true, sharedExprs);
+
+            if(!sniff(unshared, doc, unsharedExprs).equals(sniff(shared, doc, sharedExprs)))
+                throw new AssertionError("results differ for "+count+" xpaths");
+
+            long unsharedTime = time(unshared, doc);
+            long sharedTime = time(shared, doc);
+            System.out.format("%6d | %10.1f %10.1f %7.1fx%n", count, perSecond(unsharedTime), perSecond(sharedTime), (double)unsharedTime/sharedTime);
+        }
+    }
+}
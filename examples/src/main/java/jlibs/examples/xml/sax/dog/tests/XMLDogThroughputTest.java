@@ -0,0 +1,149 @@
+/**
+ * Copyright 2015 Santhosh Kumar Tekuri
+ *
+ * The JLibs authors license this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package jlibs.examples.xml.sax.dog.tests;
+
+import jlibs.core.io.FileNavigator;
+import jlibs.examples.xml.sax.dog.TestCase;
+import jlibs.examples.xml.sax.dog.TestSuite;
+import jlibs.examples.xml.sax.dog.XPathInfo;
+import jlibs.xml.sax.dog.XMLDog;
+import jlibs.xml.sax.dog.XPathResults;
+import jlibs.xml.sax.dog.expr.Expression;
+import jlibs.xml.sax.dog.sniff.Event;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares documents sniffed per second by XMLDog over the test suite:
+ * <ul>
+ * <li>fresh: new Event and XMLReader for each document</li>
+ * <li>pooled: frozen XMLDog reusing per-thread Event and XMLReader</li>
+ * <li>batch: frozen XMLDog sniffing documents in parallel on a ForkJoinPool</li>
+ * </ul>
+ * results of pooled and batch are verified against fresh before timing
+ *
+ * @author Santhosh Kumar T
+ */
+public class XMLDogThroughputTest{
+    private static final int warmupCount = 50;
+    private static final int runCount = 200;
+
+    private static XMLDog createXMLDog(TestCase testCase, List<Expression> expressions) throws Exception{
+        XMLDog dog = new XMLDog(testCase.nsContext, testCase.variableResolver, testCase.functionResolver);
+        for(XPathInfo xpathInfo: testCase.xpaths){
+            if(xpathInfo.forEach==null)
+                expressions.add(dog.addXPath(xpathInfo.xpath));
+            else
+                expressions.add(dog.addForEach(xpathInfo.forEach, xpathInfo.xpath));
+        }
+        return dog.freeze();
+    }
+
+    private static XPathResults fresh(XMLDog dog, String file) throws Exception{
+        Event event = dog.createEvent();
+        XPathResults results = new XPathResults(event);
+        event.setListener(results);
+        dog.sniff(event, new InputSource(file));
+        return results;
+    }
+
+    private static void fresh(XMLDog dog, String file, int count) throws Exception{
+        for(int i=0; i<count; i++)
+            fresh(dog, file);
+    }
+
+    private static void pooled(XMLDog dog, String file, int count) throws Exception{
+        for(int i=0; i<count; i++)
+            dog.sniff(new InputSource(file));
+    }
+
+    private static List<XPathResults> batch(XMLDog dog, String file, int count, ForkJoinPool pool) throws Exception{
+        List<InputSource> sources = new ArrayList<InputSource>(count);
+        for(int i=0; i<count; i++)
+            sources.add(new InputSource(file));
+        return dog.sniff(sources, pool);
+    }
+
+    private static String toString(XPathResults results, List<Expression> expressions){
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bout);
+        results.print(expressions, ps);
+        ps.flush();
+        return bout.toString();
+    }
+
+    /** sniffs twice with pooled, so that reused event and reader are also verified */
+    private static void verify(XMLDog dog, String file, List<Expression> expressions, ForkJoinPool pool) throws Exception{
+        String expected = toString(fresh(dog, file), expressions);
+        for(int i=0; i<2; i++){
+            if(!expected.equals(toString(dog.sniff(new InputSource(file)), expressions)))
+                throw new AssertionError("pooled results differ for "+file);
+        }
+        for(XPathResults results: batch(dog, file, 2*pool.getParallelism(), pool)){
+            if(!expected.equals(toString(results, expressions)))
+                throw new AssertionError("batch results differ for "+file);
+        }
+    }
+
+    private static double perSecond(long nanos){
+        return runCount*1E09/nanos;
+    }
+
+    public static void main(String[] args) throws Exception{
+        TestSuite testSuite = new TestSuite(args.length==0 ? TestSuite.DEFAULT_TEST_SUITE : args[0]);
+        ForkJoinPool pool = new ForkJoinPool();
+        File configFile = new File(args.length==0 ? TestSuite.DEFAULT_TEST_SUITE : args[0]);
+
+        int maxlen = 4;
+        for(TestCase testCase: testSuite.testCases)
+            maxlen = Math.max(maxlen, FileNavigator.INSTANCE.getRelativePath(configFile.getParentFile(), new File(testCase.file)).length());
+
+        System.out.format("Documents per second over %d runs, batch using %d threads:%n", runCount, pool.getParallelism());
+        System.out.format("%"+maxlen+"s | %10s %10s %10s%n", "File", "Fresh", "Pooled", "Batch");
+        for(TestCase testCase: testSuite.testCases){
+            List<Expression> expressions = new ArrayList<Expression>();
+            XMLDog dog = createXMLDog(testCase, expressions);
+            verify(dog, testCase.file, expressions, pool);
+
+            fresh(dog, testCase.file, warmupCount);
+            pooled(dog, testCase.file, warmupCount);
+            batch(dog, testCase.file, warmupCount, pool);
+
+            long time = System.nanoTime();
+            fresh(dog, testCase.file, runCount);
+            long freshTime = System.nanoTime()-time;
+
+            time = System.nanoTime();
+            pooled(dog, testCase.file, runCount);
+            long pooledTime = System.nanoTime()-time;
+
+            time = System.nanoTime();
+            batch(dog, testCase.file, runCount, pool);
+            long batchTime = System.nanoTime()-time;
+
+            String file = FileNavigator.INSTANCE.getRelativePath(configFile.getParentFile(), new File(testCase.file));
+            System.out.format("%"+maxlen+"s | %10.0f %10.0f %10.0f%n", file, perSecond(freshTime), perSecond(pooledTime), perSecond(batchTime));
+        }
+        pool.shutdown();
+    }
+}
@@ -39,4 +39,5 @@ public class Connection<T extends SelectableChannel> extends NBStream<T> impleme
 
     Connection poolPrev, poolNext;
     String poolKey;
+    SharedConnectionPool.Host sharedHost;
 }
@@ -52,6 +52,13 @@ public class ConnectionPool{
                 timeout = 60*1000;
         }
 
+        if(connection.sharedHost!=null && connection.poolNext==null && !connection.sharedHost.canPark()){
+            if(DEBUG)
+                println("connectionPool.maxIdleReached("+connection+")");
+            connection.close();
+            return;
+        }
+
         Entry entry = entries.get(key);
         if(entry==null)
             entries.put(key, entry=new Entry(key));
@@ -100,6 +107,13 @@ public class ConnectionPool{
                 ++ConnectionPool.this.count;
                 con.workingFor = con;
                 con.executionID = null;
+
+                // peer closing idle connection makes it readable,
+                // reactor then closes it, see Reactor.closeStale(Connection)
+                if(con.transport!=null)
+                    con.transport.setIdleReadInterest(true);
+                if(con.sharedHost!=null)
+                    con.sharedHost.parked(reactor);
             }
         }
 
@@ -115,7 +129,7 @@ public class ConnectionPool{
         void remove(Connection con){
             if(DEBUG)
                 println("connectionPool.remove("+con+")");
-            if(con.heapIndex!=-1)
+            if(con.timerIndex!=-1)
                 reactor.stopTimer(con);
 //            con.initWorkingFor();
             if(con==head){
@@ -138,6 +152,10 @@ public class ConnectionPool{
             con.poolNext = null;
             --count;
             --ConnectionPool.this.count;
+            if(con.transport!=null && con.isOpen())
+                con.transport.setIdleReadInterest(false);
+            if(con.sharedHost!=null)
+                con.sharedHost.unparked(reactor);
             con.taskCompleted();
             con.workingFor = reactor.getExecutionOwner();
             if(con.workingFor==null)
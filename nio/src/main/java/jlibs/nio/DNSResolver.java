@@ -0,0 +1,603 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.channels.SelectionKey.OP_READ;
+import static jlibs.nio.Debugger.DEBUG;
+import static jlibs.nio.Debugger.println;
+
+/**
+ * Non-blocking caching DNS resolver owned by a reactor.
+ * <p>
+ * A and AAAA queries are sent over UDP to {@link #nameservers}, each lookup
+ * using its own datagram channel, so that it gets a random source port.
+ * Answers are cached for their TTL, and negative answers for the TTL
+ * of SOA record in authority section (RFC 2308). Concurrent lookups of
+ * same host share a single query, and successive lookups of a host rotate
+ * through its addresses.
+ * <p>
+ * Literal addresses and hosts from hosts file are resolved without any query.
+ * If no nameservers are configured, or host is not qualified (so that search
+ * domains apply), lookup is delegated to {@link InetAddress#getAllByName(String)}
+ * on {@link Defaults#EXECUTOR}, and completed in reactor thread.
+ * <p>
+ * All methods must be called from reactor thread.
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+public class DNSResolver{
+    private final Reactor reactor;
+    private final Random random = new SecureRandom();
+
+    public List<InetSocketAddress> nameservers = Defaults.NAMESERVERS;
+    public long timeout = Defaults.TIMEOUT;
+    public int attempts = Defaults.ATTEMPTS;
+    public boolean queryAAAA = Defaults.QUERY_AAAA;
+    public long maxTTL = Defaults.MAX_TTL;
+    public long negativeTTL = Defaults.NEGATIVE_TTL;
+    public long systemTTL = Defaults.SYSTEM_TTL;
+    public int maxEntries = Defaults.MAX_ENTRIES;
+
+    private final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DNSResolver.Entry> eldest){
+            return size()>maxEntries;
+        }
+    };
+
+    DNSResolver(Reactor reactor){
+        this.reactor = reactor;
+    }
+
+    private long hits, misses, coalesced, queries;
+    public long getHits(){ return hits; }
+    public long getMisses(){ return misses; }
+    public long getCoalesced(){ return coalesced; }
+    public long getQueries(){ return queries; }
+    public int getCacheSize(){ return cache.size(); }
+
+    public void clearCache(){
+        cache.values().removeIf(entry -> entry.waiters==null);
+    }
+
+    public void resolve(String host, Consumer<Result<InetAddress>> listener){
+        InetAddress address;
+        try{
+            address = literal(host);
+            if(address==null){
+                InetAddress addresses[] = Defaults.HOSTS.get(host.toLowerCase(Locale.ENGLISH));
+                if(addresses!=null)
+                    address = addresses[0];
+            }
+        }catch(UnknownHostException ex){
+            listener.accept(new Result<>(ex));
+            return;
+        }
+        if(address!=null){
+            listener.accept(new Result<>(address));
+            return;
+        }
+
+        Entry entry = cache.get(host);
+        if(entry!=null && entry.waiters==null && entry.expiresAt<=System.currentTimeMillis()){
+            cache.remove(host);
+            entry = null;
+        }
+        if(entry==null){
+            ++misses;
+            cache.put(host, entry=new Entry(host));
+            entry.waiters = new ArrayList<>(1);
+            entry.waiters.add(listener);
+            lookup(entry);
+        }else if(entry.waiters!=null){
+            ++coalesced;
+            entry.waiters.add(listener);
+        }else{
+            ++hits;
+            listener.accept(entry.next());
+        }
+    }
+
+    private void lookup(Entry entry){
+        if(nameservers.isEmpty() || entry.host.indexOf('.')==-1){
+            if(DEBUG)
+                println("DNSResolver.lookupBlocking("+entry.host+")");
+            Defaults.EXECUTOR.execute(() -> {
+                InetAddress addresses[] = null;
+                UnknownHostException error = null;
+                try{
+                    addresses = InetAddress.getAllByName(entry.host);
+                }catch(UnknownHostException ex){
+                    error = ex;
+                }catch(Throwable thr){
+                    error = new UnknownHostException(entry.host+": "+thr);
+                }
+                InetAddress result[] = addresses;
+                UnknownHostException exception = error;
+                reactor.invokeLater(() -> completed(entry, result, exception, exception==null ? systemTTL : negativeTTL));
+            });
+        }else{
+            Query query;
+            try{
+                query = new Query(entry);
+            }catch(Throwable thr){
+                UnknownHostException ex = new UnknownHostException(entry.host);
+                ex.initCause(thr);
+                completed(entry, null, ex, 0);
+                return;
+            }
+            query.send();
+        }
+    }
+
+    private void completed(Entry entry, InetAddress addresses[], UnknownHostException error, long ttl){
+        if(DEBUG)
+            println("DNSResolver.completed("+entry.host+", "+(error==null ? Arrays.toString(addresses) : error)+", ttl="+ttl+")");
+        entry.addresses = addresses;
+        entry.error = error;
+        entry.expiresAt = System.currentTimeMillis()+Math.min(ttl, maxTTL);
+        if(ttl<=0 && cache.get(entry.host)==entry)
+            cache.remove(entry.host);
+        List<Consumer<Result<InetAddress>>> waiters = entry.waiters;
+        entry.waiters = null;
+        for(Consumer<Result<InetAddress>> listener: waiters){
+            try{
+                listener.accept(entry.next());
+            }catch(Throwable thr){
+                reactor.handleException(thr);
+            }
+        }
+    }
+
+    private static final class Entry{
+        final String host;
+        InetAddress addresses[];
+        UnknownHostException error;
+        long expiresAt;
+        int next;
+
+        /** non-null while lookup is in progress */
+        List<Consumer<Result<InetAddress>>> waiters;
+
+        Entry(String host){
+            this.host = host;
+        }
+
+        Result<InetAddress> next(){
+            if(error!=null)
+                return new Result<>(error);
+            InetAddress address = addresses[next];
+            if(++next==addresses.length)
+                next = 0;
+            return new Result<>(address);
+        }
+    }
+
+    /*-------------------------------------------------[ Query ]---------------------------------------------------*/
+
+    private static final int TYPE_A = 1;
+    private static final int TYPE_SOA = 6;
+    private static final int TYPE_AAAA = 28;
+    private static final int CLASS_IN = 1;
+    private static final int RCODE_NAME_ERROR = 3;
+
+    private final class Query extends NBChannel<DatagramChannel>{
+        private final Entry entry;
+        private final SelectionKey selectionKey;
+        private final int types[];
+        private final int ids[];
+        private int pending;
+        private int attempt;
+        private long deadline;
+
+        private final List<InetAddress> ipv4 = new ArrayList<>(), ipv6 = new ArrayList<>();
+        private long ttl = Long.MAX_VALUE;
+        private long soaTTL = -1;
+
+        Query(Entry entry) throws IOException{
+            super(Reactor.SELECTOR_PROVIDER.openDatagramChannel());
+            selectionKey = selectable.register(reactor.selector, 0, this);
+            this.entry = entry;
+            types = queryAAAA ? new int[]{ TYPE_A, TYPE_AAAA } : new int[]{ TYPE_A };
+            ids = new int[types.length];
+            pending = types.length;
+            Arrays.fill(ids, -1);
+        }
+
+        /** sends pending questions to next nameserver that accepts them */
+        void send(){
+            while(attempt<attempts*nameservers.size()){
+                InetSocketAddress nameserver = nameservers.get(attempt%nameservers.size());
+                try{
+                    send(nameserver);
+                    return;
+                }catch(Throwable thr){
+                    if(DEBUG)
+                        println(this+".sendFailed("+nameserver+"): "+thr);
+                    ++attempt;
+                }
+            }
+            shutdown();
+            completed(entry, null, new UnknownHostException(entry.host+": no response from nameservers"), 0);
+        }
+
+        private void send(InetSocketAddress nameserver) throws IOException{
+            if(DEBUG)
+                println(this+".send("+nameserver+")");
+            if(selectable.isConnected())
+                selectable.disconnect();
+            selectable.connect(nameserver);
+            ByteBuffer buffer = reactor.allocator.allocate();
+            try{
+                for(int i=0; i<types.length; i++){
+                    if(ids[i]==-2)
+                        continue;
+                    ids[i] = random.nextInt(0x10000);
+                    buffer.clear();
+                    buffer.putShort((short)ids[i]);
+                    buffer.putShort((short)0x0100); // recursion desired
+                    buffer.putShort((short)1);
+                    buffer.putShort((short)0);
+                    buffer.putShort((short)0);
+                    buffer.putShort((short)0);
+                    putName(buffer, entry.host);
+                    buffer.putShort((short)types[i]);
+                    buffer.putShort((short)CLASS_IN);
+                    buffer.flip();
+                    selectable.write(buffer);
+                    ++queries;
+                }
+            }finally{
+                reactor.allocator.free(buffer);
+            }
+            selectionKey.interestOps(OP_READ);
+            deadline = System.currentTimeMillis()+timeout;
+            reactor.startTimer(this, timeout);
+        }
+
+        @Override
+        protected void process(boolean timeout){
+            boolean retry = timeout;
+            if(!retry){
+                ByteBuffer buffer = reactor.allocator.allocate();
+                try{
+                    while(pending>0){
+                        buffer.clear();
+                        if(selectable.read(buffer)<=0)
+                            break;
+                        buffer.flip();
+                        if(!parse(buffer)){
+                            retry = true;
+                            break;
+                        }
+                    }
+                }catch(Throwable thr){
+                    if(DEBUG)
+                        println(this+".readFailed: "+thr);
+                    retry = true;
+                }finally{
+                    reactor.allocator.free(buffer);
+                }
+            }
+
+            if(pending==0)
+                finish();
+            else if(retry){
+                ++attempt;
+                send();
+            }else{
+                long remaining = deadline-System.currentTimeMillis();
+                reactor.startTimer(this, Math.max(remaining, 1));
+            }
+        }
+
+        /** returns false if nameserver failed to answer */
+        private boolean parse(ByteBuffer buffer){
+            if(buffer.remaining()<12)
+                return true;
+            int id = buffer.getShort() & 0xFFFF;
+            int flags = buffer.getShort() & 0xFFFF;
+            int i = 0;
+            while(i<ids.length && ids[i]!=id)
+                ++i;
+            if((flags & 0x8000)==0 || i==ids.length)
+                return true; // not a response to pending question
+            int qdCount = buffer.getShort() & 0xFFFF;
+            int anCount = buffer.getShort() & 0xFFFF;
+            int nsCount = buffer.getShort() & 0xFFFF;
+            buffer.getShort();
+            if(qdCount!=1 || !entry.host.equalsIgnoreCase(getName(buffer)))
+                return true;
+            if((buffer.getShort() & 0xFFFF)!=types[i])
+                return true;
+            buffer.getShort();
+
+            int rcode = flags & 0x0F;
+            if(rcode!=0 && rcode!=RCODE_NAME_ERROR)
+                return false;
+            boolean found = false;
+            if(rcode==0){
+                for(int an=0; an<anCount; an++){
+                    skipName(buffer);
+                    int type = buffer.getShort() & 0xFFFF;
+                    int clazz = buffer.getShort() & 0xFFFF;
+                    long recordTTL = buffer.getInt() & 0xFFFFFFFFL;
+                    int rdLength = buffer.getShort() & 0xFFFF;
+                    int end = buffer.position()+rdLength;
+                    if(clazz==CLASS_IN && type==types[i] && rdLength==(type==TYPE_A ? 4 : 16)){
+                        byte bytes[] = new byte[rdLength];
+                        buffer.get(bytes);
+                        try{
+                            InetAddress address = InetAddress.getByAddress(entry.host, bytes);
+                            (address instanceof Inet4Address ? ipv4 : ipv6).add(address);
+                            ttl = Math.min(ttl, recordTTL*1000);
+                            found = true;
+                        }catch(UnknownHostException ignore){
+                            // can't happen, length is validated
+                        }
+                    }
+                    buffer.position(end);
+                }
+            }
+            if(!found){
+                for(int ns=0; ns<nsCount; ns++){
+                    skipName(buffer);
+                    int type = buffer.getShort() & 0xFFFF;
+                    buffer.getShort();
+                    long recordTTL = buffer.getInt() & 0xFFFFFFFFL;
+                    int rdLength = buffer.getShort() & 0xFFFF;
+                    int end = buffer.position()+rdLength;
+                    if(type==TYPE_SOA){
+                        skipName(buffer); // mname
+                        skipName(buffer); // rname
+                        buffer.position(buffer.position()+16);
+                        long minimum = buffer.getInt() & 0xFFFFFFFFL;
+                        long negative = Math.min(recordTTL, minimum)*1000;
+                        soaTTL = soaTTL==-1 ? negative : Math.min(soaTTL, negative);
+                    }
+                    buffer.position(end);
+                }
+            }
+            ids[i] = -2;
+            --pending;
+            return true;
+        }
+
+        private void finish(){
+            shutdown();
+            if(ipv4.isEmpty() && ipv6.isEmpty())
+                completed(entry, null, new UnknownHostException(entry.host), soaTTL==-1 ? 0 : Math.min(soaTTL, negativeTTL));
+            else{
+                List<InetAddress> addresses = new ArrayList<>(ipv4.size()+ipv6.size());
+                if(Defaults.PREFER_IPV6){
+                    addresses.addAll(ipv6);
+                    addresses.addAll(ipv4);
+                }else{
+                    addresses.addAll(ipv4);
+                    addresses.addAll(ipv6);
+                }
+                completed(entry, addresses.toArray(new InetAddress[addresses.size()]), null, ttl);
+            }
+        }
+
+        @Override
+        public void shutdown(){
+            if(timerIndex!=-1)
+                reactor.stopTimer(this);
+            super.shutdown();
+        }
+
+        @Override
+        public String toString(){
+            return "DNSQuery["+entry.host+"]";
+        }
+    }
+
+    private static void putName(ByteBuffer buffer, String host){
+        int from = 0;
+        while(from<host.length()){
+            int dot = host.indexOf('.', from);
+            if(dot==-1)
+                dot = host.length();
+            buffer.put((byte)(dot-from));
+            for(int i=from; i<dot; i++)
+                buffer.put((byte)host.charAt(i));
+            from = dot+1;
+        }
+        buffer.put((byte)0);
+    }
+
+    private static String getName(ByteBuffer buffer){
+        StringBuilder name = new StringBuilder();
+        int end = -1;
+        int jumps = 0;
+        while(true){
+            int len = buffer.get() & 0xFF;
+            if(len==0)
+                break;
+            if((len & 0xC0)==0xC0){
+                int pointer = ((len & 0x3F)<<8) | (buffer.get() & 0xFF);
+                if(end==-1)
+                    end = buffer.position();
+                if(++jumps>64)
+                    throw new IllegalArgumentException("compression loop");
+                buffer.position(pointer);
+                continue;
+            }
+            if(name.length()>0)
+                name.append('.');
+            for(int i=0; i<len; i++)
+                name.append((char)(buffer.get() & 0xFF));
+        }
+        if(end!=-1)
+            buffer.position(end);
+        return name.toString();
+    }
+
+    private static void skipName(ByteBuffer buffer){
+        while(true){
+            int len = buffer.get() & 0xFF;
+            if(len==0)
+                return;
+            if((len & 0xC0)==0xC0){
+                buffer.get();
+                return;
+            }
+            buffer.position(buffer.position()+len);
+        }
+    }
+
+    /*-------------------------------------------------[ Literals ]---------------------------------------------------*/
+
+    /** returns null if given host is not an address literal */
+    static InetAddress literal(String host) throws UnknownHostException{
+        if(host.indexOf(':')!=-1)
+            return InetAddress.getByName(host); // ipv6 literal never does lookup
+        byte bytes[] = new byte[4];
+        int part = 0, value = -1;
+        for(int i=0; i<host.length(); i++){
+            char ch = host.charAt(i);
+            if(ch>='0' && ch<='9'){
+                value = (value==-1 ? 0 : value*10) + (ch-'0');
+                if(value>255)
+                    return null;
+            }else if(ch=='.' && value!=-1 && part<3){
+                bytes[part++] = (byte)value;
+                value = -1;
+            }else
+                return null;
+        }
+        if(part!=3 || value==-1)
+            return null;
+        bytes[3] = (byte)value;
+        return InetAddress.getByAddress(host, bytes);
+    }
+
+    /*-------------------------------------------------[ Options ]---------------------------------------------------*/
+
+    public static class Defaults{
+        /** nameservers from /etc/resolv.conf. if empty, system resolver is used */
+        public static List<InetSocketAddress> NAMESERVERS = new ArrayList<>();
+        public static long TIMEOUT = 2000;
+        public static int ATTEMPTS = 2;
+        public static boolean QUERY_AAAA = true;
+        public static boolean PREFER_IPV6 = Boolean.getBoolean("java.net.preferIPv6Addresses");
+
+        // in milliseconds
+        public static long MAX_TTL = 24*60*60*1000L;
+        public static long NEGATIVE_TTL = 60*1000L;
+        public static long SYSTEM_TTL = 30*1000L;
+
+        public static int MAX_ENTRIES = 10000;
+
+        /** entries from /etc/hosts, keyed by lowercase host name */
+        public static Map<String, InetAddress[]> HOSTS = new HashMap<>();
+
+        /** runs blocking lookups using system resolver */
+        public static Executor EXECUTOR;
+
+        static{
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "DNSResolver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+
+            Path resolvConf = Paths.get("/etc/resolv.conf");
+            if(Files.isReadable(resolvConf)){
+                try(BufferedReader reader=Files.newBufferedReader(resolvConf, StandardCharsets.ISO_8859_1)){
+                    String line;
+                    while((line=reader.readLine())!=null){
+                        String tokens[] = line.trim().split("\\s+");
+                        if(tokens.length>1 && tokens[0].equals("nameserver")){
+                            InetAddress address = literal(tokens[1]);
+                            if(address!=null)
+                                NAMESERVERS.add(new InetSocketAddress(address, 53));
+                        }else if(tokens[0].equals("options")){
+                            for(String option: tokens){
+                                if(option.startsWith("timeout:"))
+                                    TIMEOUT = Integer.parseInt(option.substring("timeout:".length()))*1000L;
+                                else if(option.startsWith("attempts:"))
+                                    ATTEMPTS = Integer.parseInt(option.substring("attempts:".length()));
+                            }
+                        }
+                    }
+                }catch(Exception ex){
+                    NAMESERVERS.clear();
+                }
+            }
+
+            Path hosts = Paths.get("/etc/hosts");
+            if(Files.isReadable(hosts)){
+                try(BufferedReader reader=Files.newBufferedReader(hosts, StandardCharsets.ISO_8859_1)){
+                    String line;
+                    while((line=reader.readLine())!=null){
+                        int hash = line.indexOf('#');
+                        if(hash!=-1)
+                            line = line.substring(0, hash);
+                        String tokens[] = line.trim().split("\\s+");
+                        if(tokens.length<2)
+                            continue;
+                        InetAddress address;
+                        try{
+                            address = literal(tokens[0]);
+                        }catch(UnknownHostException ex){
+                            continue;
+                        }
+                        if(address==null)
+                            continue;
+                        for(int i=1; i<tokens.length; i++){
+                            String name = tokens[i].toLowerCase(Locale.ENGLISH);
+                            InetAddress addresses[] = HOSTS.get(name);
+                            if(addresses==null)
+                                addresses = new InetAddress[]{ InetAddress.getByAddress(name, address.getAddress()) };
+                            else{
+                                addresses = Arrays.copyOf(addresses, addresses.length+1);
+                                addresses[addresses.length-1] = InetAddress.getByAddress(name, address.getAddress());
+                            }
+                            HOSTS.put(name, addresses);
+                        }
+                    }
+                }catch(Exception ex){
+                    HOSTS.clear();
+                }
+            }
+        }
+    }
+}
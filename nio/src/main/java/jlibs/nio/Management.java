@@ -28,6 +28,12 @@ import java.util.Map;
 public class Management{
     public static MBeanServer MBEAN_SERVER = ManagementFactory.getPlatformMBeanServer();
 
+    /**
+     * if true, reactors and servers record latency histograms, in microseconds.
+     * can be toggled at runtime, using {@link ReactorMXBean#setCollectMetrics(boolean)}
+     */
+    public static volatile boolean COLLECT_METRICS = false;
+
     @MXBean
     public static interface ReactorMXBean{
         public int getServersCount();
@@ -35,15 +41,83 @@ public class Management{
         public int getConnectionPending();
         public int getConnected();
         public int getPooled();
+        public long getTaskQueueDepth();
+        public long getWakeups();
         public Map<String, Integer> getPool();
+        public boolean isCollectMetrics();
+        public void setCollectMetrics(boolean collect);
+        public Map<String, Long> getSelectTime();
+        public Map<String, Long> getWorkTime();
+        public Map<String, Long> getTaskLatency();
+        public void resetMetrics();
     }
 
     @MXBean
     public static interface ServerMXBean{
         public String getType();
         public int getAccepted();
+        public String getAcceptMode();
+        public Map<String, Integer> getReactorAccepts();
         public boolean isOpen();
         public void close() throws IOException;
+        public Map<String, Map<String, Long>> getLatency();
+        public void resetLatency();
+    }
+
+    @MXBean
+    public static interface BufferAllocatorMXBean{
+        public long getHits();
+        public long getMisses();
+        public long getOutstanding();
+        public long getDropped();
+        public long getBytesRetained();
+        public long getGlobalBytesRetained();
+        public long getArenas();
+        public int getLeakDetectionSampling();
+        public void setLeakDetectionSampling(int sampling);
+        public long getLeaks();
+        public long getDoubleFrees();
+        public long getUseAfterFrees();
+    }
+
+    @MXBean
+    public static interface ConnectionPoolMXBean{
+        public int getActive();
+        public int getIdle();
+        public int getWaiting();
+        public long getCreated();
+        public long getReused();
+        public long getMigrated();
+        public long getStale();
+        public int getMaxActive();
+        public void setMaxActive(int maxActive);
+        public int getMaxIdle();
+        public void setMaxIdle(int maxIdle);
+    }
+
+    @MXBean
+    public static interface SSLMXBean{
+        public long getHandshakes();
+        public long getResumed();
+        public long getFailed();
+        public double getResumptionRatio();
+        public Map<String, Long> getHandshakeLatency();
+        public void resetLatency();
+    }
+
+    @MXBean
+    public static interface CompressionMXBean{
+        public long getDeflatersCreated();
+        public long getDeflatersReused();
+        public long getDeflateInputBytes();
+        public long getDeflateOutputBytes();
+        public double getCompressionRatio();
+        public long getDeflateTime();
+        public long getInflatersCreated();
+        public long getInflatersReused();
+        public long getInflateInputBytes();
+        public long getInflateOutputBytes();
+        public long getInflateTime();
     }
 
     static ObjectName register(Object mbean, String name){
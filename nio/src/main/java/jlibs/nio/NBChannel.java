@@ -43,7 +43,8 @@ public abstract class NBChannel<T extends SelectableChannel> implements Channel{
     @Trace(condition=IO, args="($1?\"timeout\":\"\")")
     protected abstract void process(boolean timeout);
 
-    int heapIndex = -1;
+    int timerIndex = -1;
+    NBChannel timerPrev, timerNext;
     long timeoutAt = Long.MAX_VALUE;
     public long getTimeout(){
         return 0;
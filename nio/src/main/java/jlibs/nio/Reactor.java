@@ -16,8 +16,8 @@
 package jlibs.nio;
 
 import jlibs.core.lang.Waiter;
-import jlibs.core.util.Heap;
 import jlibs.nio.util.BufferAllocator;
+import jlibs.nio.util.Histogram;
 import jlibs.nio.util.PooledBufferAllocator;
 import jlibs.nio.util.UnpooledBufferAllocator;
 
@@ -25,7 +25,12 @@ import javax.management.ObjectName;
 import java.io.IOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.spi.SelectorProvider;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -38,23 +43,91 @@ import static jlibs.nio.Debugger.*;
 public class Reactor{
     public final int id;
     public final Selector selector;
+    private final SelectedKeys selectedKeys;
     public final ConnectionPool connectionPool = new ConnectionPool(this);
+    public final DNSResolver resolver = new DNSResolver(this);
     public final BufferAllocator allocator;
 
     long lastAcceptID;
     long lastConnectID;
     private final ObjectName objName;
+    private final ObjectName allocatorName;
 
     Reactor(int id) throws IOException{
         this.id = id;
-        selector = Selector.open();
+        selector = SELECTOR_PROVIDER.openSelector();
+        selectedKeys = OPTIMIZE_SELECTED_KEYS ? SelectedKeys.install(selector) : null;
         executionID = "R"+id;
         toString = "Reactor"+id;
 
-        if(BufferAllocator.Defaults.POOL_BUFFERS)
-            allocator = new PooledBufferAllocator(BufferAllocator.Defaults.USE_DIRECT_BUFFERS);
-        else
+        if(BufferAllocator.Defaults.POOL_BUFFERS){
+            PooledBufferAllocator pool = new PooledBufferAllocator(BufferAllocator.Defaults.USE_DIRECT_BUFFERS);
+            allocator = pool;
+            allocatorName = Management.register(new Management.BufferAllocatorMXBean(){
+                @Override
+                public long getHits(){
+                    return pool.getHits();
+                }
+
+                @Override
+                public long getMisses(){
+                    return pool.getMisses();
+                }
+
+                @Override
+                public long getOutstanding(){
+                    return pool.getOutstanding();
+                }
+
+                @Override
+                public long getDropped(){
+                    return pool.getDropped();
+                }
+
+                @Override
+                public long getBytesRetained(){
+                    return pool.getBytesRetained();
+                }
+
+                @Override
+                public long getGlobalBytesRetained(){
+                    return PooledBufferAllocator.getGlobalBytesRetained();
+                }
+
+                @Override
+                public long getArenas(){
+                    return pool.getArenas();
+                }
+
+                @Override
+                public int getLeakDetectionSampling(){
+                    return pool.getLeakDetectionSampling();
+                }
+
+                @Override
+                public void setLeakDetectionSampling(int sampling){
+                    pool.setLeakDetectionSampling(sampling);
+                }
+
+                @Override
+                public long getLeaks(){
+                    return pool.getLeaks();
+                }
+
+                @Override
+                public long getDoubleFrees(){
+                    return pool.getDoubleFrees();
+                }
+
+                @Override
+                public long getUseAfterFrees(){
+                    return pool.getUseAfterFrees();
+                }
+            }, "jlibs.nio:type=BufferAllocator,reactor="+id);
+        }else{
             allocator = BufferAllocator.Defaults.USE_DIRECT_BUFFERS ? UnpooledBufferAllocator.DIRECT : UnpooledBufferAllocator.HEAP;
+            allocatorName = null;
+        }
 
         objName = Management.register(new Management.ReactorMXBean(){
             @Override
@@ -82,6 +155,16 @@ public class Reactor{
                 return connectionPool.count();
             }
 
+            @Override
+            public long getTaskQueueDepth(){
+                return Reactor.this.getTaskQueueDepth();
+            }
+
+            @Override
+            public long getWakeups(){
+                return Reactor.this.getWakeups();
+            }
+
             @Override
             public Map<String, Integer> getPool(){
                 Map<String, Integer> map[] = new Map[1];
@@ -96,6 +179,36 @@ public class Reactor{
                 }
                 return map[0];
             }
+
+            @Override
+            public boolean isCollectMetrics(){
+                return Management.COLLECT_METRICS;
+            }
+
+            @Override
+            public void setCollectMetrics(boolean collect){
+                Management.COLLECT_METRICS = collect;
+            }
+
+            @Override
+            public Map<String, Long> getSelectTime(){
+                return selectTime.toMap();
+            }
+
+            @Override
+            public Map<String, Long> getWorkTime(){
+                return workTime.toMap();
+            }
+
+            @Override
+            public Map<String, Long> getTaskLatency(){
+                return taskLatency.toMap();
+            }
+
+            @Override
+            public void resetMetrics(){
+                Reactor.this.resetMetrics();
+            }
         }, "jlibs.nio:type=Reactor,id="+id);
     }
 
@@ -135,8 +248,9 @@ public class Reactor{
     }
 
     void register(TCPServer server) throws IOException{
-        if(server.selectable.keyFor(selector)==null){
-            server.selectable.register(selector, OP_ACCEPT, server);
+        NBChannel<ServerSocketChannel> acceptor = server.acceptor(this);
+        if(acceptor.selectable.keyFor(selector)==null){
+            acceptor.selectable.register(selector, OP_ACCEPT, acceptor);
             servers.add(server);
             if(DEBUG)
                 println(server+".register");
@@ -147,7 +261,7 @@ public class Reactor{
         if(DEBUG)
             println(server+".unregister");
         servers.remove(server);
-        SelectionKey key = server.selectable.keyFor(selector);
+        SelectionKey key = server.acceptor(this).selectable.keyFor(selector);
         if(key!=null && key.isValid())
             key.cancel();
     }
@@ -158,17 +272,56 @@ public class Reactor{
     int connectionPending;
     int connected;
 
+    /**
+     * accepted+connected+connectionPending, published once per
+     * select loop iteration so that other threads can read it
+     * safely. used by TCPServer in LEAST_LOADED accept mode
+     */
+    volatile int load;
+
     public int getAccepted(){ return accepted; }
     public int getConnectionPending(){ return connectionPending; }
     public int getConnected(){ return connected; }
 
     /*-------------------------------------------------[ Tasks ]---------------------------------------------------*/
 
-    private volatile Deque<Runnable> tasks = new ArrayDeque<>();
+    private final TaskQueue tasks = new TaskQueue();
+    private final AtomicBoolean selecting = new AtomicBoolean();
+    private final LongAdder wakeups = new LongAdder();
+
+    /**
+     * Runs given task in reactor thread.
+     * Selector is woken up only by the first task posted
+     * after the reactor started blocking in select.
+     * This method is thread-safe and lock-free
+     */
+    public void invokeLater(Runnable task){
+        tasks.add(task);
+        wakeupSelector();
+    }
+
+    /**
+     * Runs given tasks in reactor thread, in iteration order.
+     * Selector is woken up at most once for the whole batch
+     */
+    public void invokeLater(Collection<? extends Runnable> tasks){
+        this.tasks.addAll(tasks);
+        wakeupSelector();
+    }
+
+    private void wakeupSelector(){
+        if(selecting.get() && selecting.compareAndSet(true, false)){
+            wakeups.increment();
+            selector.wakeup();
+        }
+    }
+
+    public long getTaskQueueDepth(){
+        return tasks.size();
+    }
 
-    public synchronized void invokeLater(Runnable task){
-        tasks.push(task);
-        selector.wakeup();
+    public long getWakeups(){
+        return wakeups.sum();
     }
 
     public void invokeAndWait(Runnable task) throws InterruptedException{
@@ -183,6 +336,25 @@ public class Reactor{
         }
     }
 
+    /*-------------------------------------------------[ Metrics ]---------------------------------------------------*/
+
+    // recorded only when Management.COLLECT_METRICS is true, in microseconds
+
+    /** time spent blocked in select */
+    public final Histogram selectTime = new Histogram();
+
+    /** time spent between two selects, processing ready channels, tasks and timeouts */
+    public final Histogram workTime = new Histogram();
+
+    /** time tasks waited in queue before being run */
+    public final Histogram taskLatency = new Histogram();
+
+    public void resetMetrics(){
+        selectTime.reset();
+        workTime.reset();
+        taskLatency.reset();
+    }
+
     /*-------------------------------------------------[ wakeupList ]---------------------------------------------------*/
 
     private NBStream wakeupHead;
@@ -225,16 +397,18 @@ public class Reactor{
         public void run(){
             final Selector selector = reactor.selector;
             final TimeoutTracker timeoutTracker = reactor.timeoutTracker;
-            Deque<Runnable> tempTasks = new ArrayDeque<>();
+            final TaskQueue tasks = reactor.tasks;
+            Runnable task;
             NBChannel nbChannel;
             NBStream nbStream;
+            long workStart = 0;
 
             while(true){
                 while(wakeupHead!=null){
                     nbStream = wakeupHead;
                     wakeupHead = null;
                     while(nbStream!=null){
-                        if(nbStream.heapIndex!=-1)
+                        if(nbStream.timerIndex!=-1)
                             timeoutTracker.stopTimer(nbStream);
                         activeChannel = nbStream;
                         try{
@@ -249,64 +423,72 @@ public class Reactor{
                 }
 
                 // run tasks
-                while(!tasks.isEmpty()){
-                    synchronized(this){
-                        Deque<Runnable> temp = tasks;
-                        tasks = tempTasks;
-                        tempTasks = temp;
-                    }
-                    while(!tempTasks.isEmpty()){
-                        activeChannel = null;
-                        if(DEBUG)
-                            enter("runTask");
-                        try{
-                            tempTasks.pop().run();
-                        }catch(Throwable thr){
-                            handleException(thr);
-                        }
-                        if(DEBUG)
-                            exit();
+                while((task=tasks.poll())!=null){
+                    if(tasks.queuedAt!=0)
+                        taskLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime()-tasks.queuedAt));
+                    activeChannel = null;
+                    if(DEBUG)
+                        enter("runTask");
+                    try{
+                        task.run();
+                    }catch(Throwable thr){
+                        handleException(thr);
                     }
+                    if(DEBUG)
+                        exit();
                 }
 
                 if(shutdown && servers.size()==0 && connected==0 && connectionPending==0 && accepted==0){
                     try{
                         selector.close();
                         Management.unregister(objName);
+                        Management.unregister(allocatorName);
                     }catch(Throwable thr){
                         handleException(thr);
                     }
                     return;
                 }
 
+                load = accepted+connected+connectionPending;
+
                 boolean tracking = timeoutTracker.isTracking();
                 long selectTimeout = tracking ? timeoutTracker.waitTime() : 0L;
 
+                long selectStart = 0;
+                if(Management.COLLECT_METRICS){
+                    selectStart = System.nanoTime();
+                    if(workStart!=0)
+                        workTime.record(TimeUnit.NANOSECONDS.toMicros(selectStart-workStart));
+                }
+
                 int selected = 0;
                 try{
                     if(IO)
                         enter("select("+selectTimeout+")");
-                    selected = selector.select(selectTimeout);
+                    selecting.set(true);
+                    // tasks posted before selecting was set, didn't wakeup selector
+                    selected = tasks.isEmpty() ? selector.select(selectTimeout) : selector.selectNow();
                 }catch(IOException ex){
                     handleException(ex);
                 }
-                if(tracking)
-                    timeoutTracker.time = System.currentTimeMillis();
-                if(selected>0){
-                    Set<SelectionKey> selectedKeys = selector.selectedKeys();
-                    for(SelectionKey key: selectedKeys){
-                        if(key.isValid()){
-                            nbChannel = (NBChannel)key.attachment();
-                            if(nbChannel.heapIndex!=-1)
-                                timeoutTracker.stopTimer(nbChannel);
-                            activeChannel = nbChannel;
-                            try{
-                                nbChannel.process(false);
-                            }catch(Throwable thr){
-                                handleException(thr);
-                            }
-                        }
+                selecting.lazySet(false);
+                if(selectStart!=0){
+                    workStart = System.nanoTime();
+                    selectTime.record(TimeUnit.NANOSECONDS.toMicros(workStart-selectStart));
+                }else
+                    workStart = 0;
+                timeoutTracker.time = System.currentTimeMillis();
+                if(selectedKeys!=null){
+                    SelectionKey keys[] = selectedKeys.keys;
+                    for(int i=0, size=selectedKeys.size; i<size; i++){
+                        process(keys[i]);
+                        keys[i] = null;
                     }
+                    selectedKeys.size = 0;
+                }else if(selected>0){
+                    Set<SelectionKey> selectedKeys = selector.selectedKeys();
+                    for(SelectionKey key: selectedKeys)
+                        process(key);
                     selectedKeys.clear();
                 }
                 if(IO)
@@ -331,6 +513,24 @@ public class Reactor{
             }
         }
 
+        private void process(SelectionKey key){
+            if(key.isValid()){
+                NBChannel nbChannel = (NBChannel)key.attachment();
+                if(nbChannel.timerIndex!=-1)
+                    timeoutTracker.stopTimer(nbChannel);
+                activeChannel = nbChannel;
+                if(nbChannel instanceof Connection && ((Connection)nbChannel).poolNext!=null){
+                    closeStale((Connection)nbChannel);
+                    return;
+                }
+                try{
+                    nbChannel.process(false);
+                }catch(Throwable thr){
+                    handleException(thr);
+                }
+            }
+        }
+
         @Override
         public void uncaughtException(Thread thread, Throwable throwable){
             handleException(throwable);
@@ -339,9 +539,24 @@ public class Reactor{
         }
     }
 
+    /**
+     * idle connection in pool became readable, i.e. peer closed it
+     * or sent unexpected data. either way it can't be reused
+     */
+    private void closeStale(Connection con){
+        if(IO)
+            println(con+".stale");
+        if(con.sharedHost!=null)
+            con.sharedHost.stale.increment();
+        connectionPool.remove(con);
+        con.close();
+    }
+
     /*-------------------------------------------------[ Timeout ]---------------------------------------------------*/
 
-    private TimeoutTracker timeoutTracker = new TimeoutTracker();
+    private final TimeoutTracker timeoutTracker = USE_TIMING_WHEEL
+            ? new TimeoutTracker.WheelTracker(TIMING_WHEEL_TICK)
+            : new TimeoutTracker.HeapTracker();
     void startTimer(NBChannel channel, long timeout){
         if(timeout>0)
             timeoutTracker.startTimer(channel, timeout);
@@ -351,56 +566,6 @@ public class Reactor{
         timeoutTracker.stopTimer(channel);
     }
 
-    private final class TimeoutTracker{
-        private final Heap<NBChannel> heap = new Heap<NBChannel>(1000){
-            @Override
-            protected void setIndex(NBChannel channel, int index){
-                channel.heapIndex = index;
-            }
-
-            @Override
-            protected int compare(NBChannel channel1, NBChannel channel2){
-                return channel1.timeoutAt<channel2.timeoutAt ? -1 : (channel1.timeoutAt==channel2.timeoutAt?0:+1);
-            }
-        };
-
-        public boolean isTracking(){
-            return heap.size()>0;
-        }
-
-        public void startTimer(NBChannel channel, long timeout){
-            if(channel.heapIndex!=-1)
-                stopTimer(channel);
-            if(timeout>0){
-                channel.timeoutAt = System.currentTimeMillis() + timeout;
-                heap.add(channel);
-            }
-        }
-
-        public void stopTimer(NBChannel channel){
-            assert channel.heapIndex!=-1;
-            NBChannel removed = heap.removeAt(channel.heapIndex);
-            assert removed==channel;
-            assert channel.heapIndex==-1;
-            channel.timeoutAt = Long.MAX_VALUE;
-        }
-
-        long time;
-        public NBChannel next(){
-            NBChannel root = heap.root();
-            if(root!=null && root.timeoutAt<time){
-                assert root.heapIndex==0;
-                heap.removeAt(0);
-                return root;
-            }else
-                return null;
-        }
-
-        public long waitTime(){
-            return heap.size()==0 ? 0L : Math.max(1000L, heap.root().timeoutAt-System.currentTimeMillis());
-        }
-    }
-
     /*-------------------------------------------------[ Shutdown ]---------------------------------------------------*/
 
     private boolean shutdown;
@@ -423,6 +588,7 @@ public class Reactor{
                     }
                 }
                 connected = connectionPending = accepted = 0;
+                load = 0;
             }
         }
     }
@@ -448,4 +614,29 @@ public class Reactor{
             reactor.builder = builder;
         return builder.toString();
     }
+
+    /*-------------------------------------------------[ Options ]---------------------------------------------------*/
+
+    /**
+     * provider used to open selectors and channels. Can be replaced
+     * with native provider, before starting {@link Reactors}
+     */
+    public static SelectorProvider SELECTOR_PROVIDER = SelectorProvider.provider();
+
+    /**
+     * if true, selected-key set of selector is replaced with an array backed set,
+     * when selector implementation allows it
+     */
+    public static boolean OPTIMIZE_SELECTED_KEYS = true;
+
+    /**
+     * if true, timeouts are tracked using hierarchical timing wheel,
+     * otherwise using binary heap
+     */
+    public static boolean USE_TIMING_WHEEL = true;
+
+    /**
+     * tick duration of timing wheel in milliseconds
+     */
+    public static long TIMING_WHEEL_TICK = 100;
 }
@@ -15,8 +15,11 @@
 
 package jlibs.nio;
 
+import jlibs.nio.util.Histogram;
+
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -65,6 +68,16 @@ public class Reactors{
                 return Arrays.stream(reactors).mapToInt(reactor -> reactor.connectionPool.count()).sum();
             }
 
+            @Override
+            public long getTaskQueueDepth(){
+                return Arrays.stream(reactors).mapToLong(Reactor::getTaskQueueDepth).sum();
+            }
+
+            @Override
+            public long getWakeups(){
+                return Arrays.stream(reactors).mapToLong(Reactor::getWakeups).sum();
+            }
+
             @Override
             public Map<String, Integer> getPool(){
                 try{
@@ -85,6 +98,44 @@ public class Reactors{
                     throw new RuntimeException(ex);
                 }
             }
+
+            @Override
+            public boolean isCollectMetrics(){
+                return Management.COLLECT_METRICS;
+            }
+
+            @Override
+            public void setCollectMetrics(boolean collect){
+                Management.COLLECT_METRICS = collect;
+            }
+
+            @Override
+            public Map<String, Long> getSelectTime(){
+                return merge(reactor -> reactor.selectTime);
+            }
+
+            @Override
+            public Map<String, Long> getWorkTime(){
+                return merge(reactor -> reactor.workTime);
+            }
+
+            @Override
+            public Map<String, Long> getTaskLatency(){
+                return merge(reactor -> reactor.taskLatency);
+            }
+
+            private Map<String, Long> merge(Function<Reactor, Histogram> histogram){
+                Histogram merged = new Histogram();
+                for(Reactor reactor: reactors)
+                    merged.add(histogram.apply(reactor));
+                return merged.toMap();
+            }
+
+            @Override
+            public void resetMetrics(){
+                for(Reactor reactor: reactors)
+                    reactor.resetMetrics();
+            }
         }, "jlibs.nio:type=Reactors");
     }
 
@@ -19,6 +19,7 @@ import jlibs.nio.http.expr.Bean;
 import jlibs.nio.http.expr.UnresolvedException;
 import jlibs.nio.http.expr.ValueMap;
 import jlibs.nio.util.Buffers;
+import jlibs.nio.util.Histogram;
 import jlibs.nio.util.NIOUtil;
 
 import javax.net.ssl.*;
@@ -27,6 +28,12 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import static java.nio.channels.SelectionKey.OP_READ;
 import static java.nio.channels.SelectionKey.OP_WRITE;
@@ -82,6 +89,7 @@ public final class SSLSocket implements Transport, Bean{
                     " packetBufferSize: "+session.getPacketBufferSize() +
                     " handshakeStatus: "+engine.getHandshakeStatus());
         }
+        handshakeStarted();
         engine.beginHandshake();
         selfInterests = engine.getHandshakeStatus()==NEED_UNWRAP ? OP_READ : OP_WRITE;
     }
@@ -131,7 +139,7 @@ public final class SSLSocket implements Transport, Bean{
                     }else
                         peerWriteBuffer.clear();
                     try{
-                        SSLEngineResult result = engine.wrap(appWriteBuffers.array, appWriteBuffers.offset, appWriteBuffers.length, peerWriteBuffer);
+                        SSLEngineResult result = wrap();
                         if(IO) println(result);
                         assert result.getStatus()!=BUFFER_UNDERFLOW;
                         assert result.getStatus()==OK || (result.getStatus()==CLOSED && engine.isOutboundDone());
@@ -175,7 +183,7 @@ public final class SSLSocket implements Transport, Bean{
                             return;
                         appReadBuffer.clear();
                         try{
-                            SSLEngineResult result = engine.unwrap(peerReadBuffer, appReadBuffers, appReadBuffersOffset, appReadBuffers.length-appReadBuffersOffset);
+                            SSLEngineResult result = unwrap();
                             if(IO) println(result);
                             if(result.getStatus()==BUFFER_UNDERFLOW)
                                 unwrapUnderflow = true;
@@ -216,6 +224,30 @@ public final class SSLSocket implements Transport, Bean{
         }
     }
 
+    private SSLEngineResult wrap() throws SSLException{
+        try{
+            SSLEngineResult result = engine.wrap(appWriteBuffers.array, appWriteBuffers.offset, appWriteBuffers.length, peerWriteBuffer);
+            if(result.getHandshakeStatus()==FINISHED)
+                handshakeFinished();
+            return result;
+        }catch(SSLException ex){
+            handshakeFailed();
+            throw ex;
+        }
+    }
+
+    private SSLEngineResult unwrap() throws SSLException{
+        try{
+            SSLEngineResult result = engine.unwrap(peerReadBuffer, appReadBuffers, appReadBuffersOffset, appReadBuffers.length-appReadBuffersOffset);
+            if(result.getHandshakeStatus()==FINISHED)
+                handshakeFinished();
+            return result;
+        }catch(SSLException ex){
+            handshakeFailed();
+            throw ex;
+        }
+    }
+
     private boolean writePendingToPeer() throws IOException{
         if(peerWriteBuffer!=null && peerWriteBuffer.hasRemaining()){
             do{
@@ -550,6 +582,114 @@ public final class SSLSocket implements Transport, Bean{
         return "SSLSocket";
     }
 
+    /*-------------------------------------------------[ Statistics ]---------------------------------------------------*/
+
+    public static final HandshakeStatistics CLIENT_STATISTICS = new HandshakeStatistics("client");
+    public static final HandshakeStatistics SERVER_STATISTICS = new HandshakeStatistics("server");
+
+    private long handshakeStartedAt;
+    private long handshakeStartedNanos;
+    private boolean resumed;
+
+    /**
+     * tells whether initial handshake resumed previous session.
+     * renegotiations and post-handshake messages are not tracked
+     */
+    public boolean isResumed(){
+        return resumed;
+    }
+
+    private HandshakeStatistics statistics(){
+        return engine.getUseClientMode() ? CLIENT_STATISTICS : SERVER_STATISTICS;
+    }
+
+    private void handshakeStarted(){
+        handshakeStartedAt = System.currentTimeMillis();
+        handshakeStartedNanos = System.nanoTime();
+    }
+
+    private void handshakeFinished(){
+        if(handshakeStartedAt!=0){
+            // resumed session was created by an earlier handshake
+            resumed = engine.getSession().getCreationTime()<handshakeStartedAt;
+            statistics().finished(resumed, System.nanoTime()-handshakeStartedNanos);
+            handshakeStartedAt = 0;
+        }
+    }
+
+    private void handshakeFailed(){
+        if(handshakeStartedAt!=0){
+            statistics().failed.increment();
+            handshakeStartedAt = 0;
+        }
+    }
+
+    public static final class HandshakeStatistics{
+        private final LongAdder full = new LongAdder();
+        private final LongAdder resumed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        /** handshake latency in microseconds */
+        public final Histogram latency = new Histogram();
+
+        private HandshakeStatistics(String mode){
+            Management.register(new Management.SSLMXBean(){
+                @Override public long getHandshakes(){ return HandshakeStatistics.this.getHandshakes(); }
+                @Override public long getResumed(){ return HandshakeStatistics.this.getResumed(); }
+                @Override public long getFailed(){ return HandshakeStatistics.this.getFailed(); }
+                @Override public double getResumptionRatio(){ return HandshakeStatistics.this.getResumptionRatio(); }
+                @Override public Map<String, Long> getHandshakeLatency(){ return latency.toMap(); }
+                @Override public void resetLatency(){ latency.reset(); }
+            }, "jlibs.nio:type=SSL,mode="+mode);
+        }
+
+        private void finished(boolean resumed, long nanos){
+            (resumed ? this.resumed : full).increment();
+            latency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+
+        public long getHandshakes(){ return full.sum()+resumed.sum(); }
+        public long getResumed(){ return resumed.sum(); }
+        public long getFailed(){ return failed.sum(); }
+
+        public double getResumptionRatio(){
+            long resumed = this.resumed.sum();
+            long handshakes = full.sum()+resumed;
+            return handshakes==0 ? 0 : (double)resumed/handshakes;
+        }
+    }
+
+    /*-------------------------------------------------[ Session Cache ]---------------------------------------------------*/
+
+    private static final Set<SSLContext> CONFIGURED_CONTEXTS = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * applies {@link #SESSION_CACHE_SIZE} and {@link #SESSION_TIMEOUT}
+     * to session contexts of given sslContext, once
+     */
+    public static void configureSessionCache(SSLContext sslContext){
+        synchronized(CONFIGURED_CONTEXTS){
+            if(!CONFIGURED_CONTEXTS.add(sslContext))
+                return;
+        }
+        for(SSLSessionContext sessionContext: new SSLSessionContext[]{ sslContext.getClientSessionContext(), sslContext.getServerSessionContext() }){
+            if(sessionContext==null)
+                continue;
+            if(SESSION_CACHE_SIZE>=0)
+                sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            if(SESSION_TIMEOUT>=0)
+                sessionContext.setSessionTimeout(SESSION_TIMEOUT);
+        }
+    }
+
+    /*-------------------------------------------------[ Options ]---------------------------------------------------*/
+
+    /** max sessions cached per SSLContext. 0=unlimited, -ve=jdk default */
+    public static int SESSION_CACHE_SIZE = -1;
+
+    /** seconds a cached session can be resumed. 0=unlimited, -ve=jdk default */
+    public static int SESSION_TIMEOUT = -1;
+
     /*-------------------------------------------------[ Bean ]---------------------------------------------------*/
 
     @Override
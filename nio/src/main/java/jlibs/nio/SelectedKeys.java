@@ -0,0 +1,90 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio;
+import java.lang.reflect.Field;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Array backed replacement for selected-key set of jdk's selector.
+ * <p>
+ * jdk's selector adds ready keys into a HashSet, and iterating it
+ * allocates an iterator on each select. This set is installed into
+ * selector using reflection, so that reactor can walk the ready keys
+ * as an array without producing garbage.
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+final class SelectedKeys extends AbstractSet<SelectionKey>{
+    SelectionKey keys[] = new SelectionKey[1024];
+    int size;
+
+    @Override
+    public boolean add(SelectionKey key){
+        if(key==null)
+            return false;
+        if(size==keys.length)
+            keys = Arrays.copyOf(keys, size*2);
+        keys[size++] = key;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o){
+        return false;
+    }
+
+    @Override
+    public boolean remove(Object o){
+        return false;
+    }
+
+    @Override
+    public int size(){
+        return size;
+    }
+
+    @Override
+    public Iterator<SelectionKey> iterator(){
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * installs new SelectedKeys into given selector.
+     * returns null if the selector implementation does not allow it
+     */
+    static SelectedKeys install(Selector selector){
+        try{
+            Class<?> impl = Class.forName("sun.nio.ch.SelectorImpl", false, ClassLoader.getSystemClassLoader());
+            if(!impl.isInstance(selector))
+                return null;
+            Field selectedKeys = impl.getDeclaredField("selectedKeys");
+            Field publicSelectedKeys = impl.getDeclaredField("publicSelectedKeys");
+            selectedKeys.setAccessible(true);
+            publicSelectedKeys.setAccessible(true);
+            SelectedKeys keys = new SelectedKeys();
+            selectedKeys.set(selector, keys);
+            publicSelectedKeys.set(selector, keys);
+            return keys;
+        }catch(Throwable thr){
+            // jdk9+ without --add-opens java.base/sun.nio.ch=ALL-UNNAMED
+            return null;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio;
+
+import javax.management.ObjectName;
+import java.net.ConnectException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static jlibs.nio.Debugger.DEBUG;
+import static jlibs.nio.Debugger.println;
+
+/**
+ * Connection pool shared by all reactors.
+ * <p>
+ * Idle connections still live in {@link ConnectionPool} of the reactor
+ * that owns them. This class counts them per endpoint across reactors, so
+ * that a reactor with no idle connection can borrow one parked on another
+ * reactor. Borrowed connections are migrated to the borrowing reactor.
+ * Only connections without filters (i.e. not SSL) can be migrated.
+ * <p>
+ * When {@link Host#maxActive} connections of an endpoint are in use,
+ * requests wait in FIFO order until a connection is released or closed.
+ * When {@link Host#maxIdle} connections are idle, released connections
+ * are closed.
+ * <p>
+ * Enabled by setting {@link #INSTANCE} before making any connections.
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+public class SharedConnectionPool{
+    public static SharedConnectionPool INSTANCE;
+
+    public int maxActive = Defaults.MAX_ACTIVE;
+    public int maxIdle = Defaults.MAX_IDLE;
+    public int maxWaiting = Defaults.MAX_WAITING;
+
+    private final ConcurrentHashMap<String, Host> hosts = new ConcurrentHashMap<>();
+
+    public Host host(String key){
+        Host host = hosts.get(key);
+        return host==null ? hosts.computeIfAbsent(key, Host::new) : host;
+    }
+
+    public Collection<Host> hosts(){
+        return Collections.unmodifiableCollection(hosts.values());
+    }
+
+    public void getConnection(TCPEndpoint endpoint, Proxy proxy, Consumer<Result<Connection>> listener){
+        acquire(Reactor.current(), host(endpoint.toString()), endpoint, proxy, listener, true);
+    }
+
+    private void acquire(Reactor reactor, Host host, TCPEndpoint endpoint, Proxy proxy, Consumer<Result<Connection>> listener, boolean borrow){
+        Connection con = reactor.connectionPool.remove(host.key);
+        if(con!=null){
+            host.reused.increment();
+            listener.accept(new Result<>(con));
+            return;
+        }
+
+        if(borrow && endpoint.sslContext==null && borrow(reactor, host, endpoint, proxy, listener))
+            return;
+
+        if(host.tryActivate()){
+            endpoint.newConnection(result -> {
+                try{
+                    result.get().sharedHost = host;
+                    host.created.increment();
+                }catch(Throwable thr){
+                    host.deactivate();
+                }
+                listener.accept(result);
+            }, proxy);
+            return;
+        }
+
+        if(host.waiting.get()>=maxWaiting){
+            listener.accept(new Result<>(new ConnectException("too many requests waiting for connection to "+host.key)));
+            return;
+        }
+        if(DEBUG)
+            println("sharedConnectionPool.wait("+host.key+")");
+        host.waiting.incrementAndGet();
+        host.waiters.add(new Waiter(reactor, endpoint, proxy, listener));
+        // connection might have been released before we are queued
+        if(host.active.get()<host.maxActive)
+            host.wakeup();
+    }
+
+    private boolean borrow(Reactor reactor, Host host, TCPEndpoint endpoint, Proxy proxy, Consumer<Result<Connection>> listener){
+        for(int i=0; i<host.idle.length(); i++){
+            if(i!=reactor.id && host.idle.get(i)>0){
+                Reactor owner = Reactors.get().get(i);
+                if(DEBUG)
+                    println("sharedConnectionPool.borrow("+host.key+", "+owner+")");
+                owner.invokeLater(() -> {
+                    Connection con = owner.connectionPool.remove(host.key);
+                    if(con instanceof TCPConnection && ((TCPConnection)con).isMigratable()){
+                        host.migrated.increment();
+                        ((TCPConnection)con).migrate(reactor, result -> {
+                            if(DEBUG)
+                                println("sharedConnectionPool.migrated("+host.key+")");
+                            host.reused.increment();
+                            listener.accept(result);
+                        });
+                    }else{
+                        if(con!=null)
+                            owner.connectionPool.add(host.key, con);
+                        reactor.invokeLater(() -> acquire(reactor, host, endpoint, proxy, listener, false));
+                    }
+                });
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Waiter{
+        final Reactor reactor;
+        final TCPEndpoint endpoint;
+        final Proxy proxy;
+        final Consumer<Result<Connection>> listener;
+
+        Waiter(Reactor reactor, TCPEndpoint endpoint, Proxy proxy, Consumer<Result<Connection>> listener){
+            this.reactor = reactor;
+            this.endpoint = endpoint;
+            this.proxy = proxy;
+            this.listener = listener;
+        }
+    }
+
+    /*-------------------------------------------------[ Host ]---------------------------------------------------*/
+
+    /**
+     * connections to an endpoint. thread-safe
+     */
+    public class Host{
+        public final String key;
+        public volatile int maxActive = SharedConnectionPool.this.maxActive;
+        public volatile int maxIdle = SharedConnectionPool.this.maxIdle;
+
+        /** connections in use, or being connected */
+        final AtomicInteger active = new AtomicInteger();
+
+        /** idle connections per reactor */
+        final AtomicIntegerArray idle = new AtomicIntegerArray(Reactors.get().size());
+
+        final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+        final AtomicInteger waiting = new AtomicInteger();
+
+        final LongAdder created = new LongAdder();
+        final LongAdder reused = new LongAdder();
+        final LongAdder migrated = new LongAdder();
+        final LongAdder stale = new LongAdder();
+
+        private Host(String key){
+            this.key = key;
+            Management.register(new Management.ConnectionPoolMXBean(){
+                @Override public int getActive(){ return Host.this.getActive(); }
+                @Override public int getIdle(){ return Host.this.getIdle(); }
+                @Override public int getWaiting(){ return Host.this.getWaiting(); }
+                @Override public long getCreated(){ return Host.this.getCreated(); }
+                @Override public long getReused(){ return Host.this.getReused(); }
+                @Override public long getMigrated(){ return Host.this.getMigrated(); }
+                @Override public long getStale(){ return Host.this.getStale(); }
+                @Override public int getMaxActive(){ return maxActive; }
+                @Override public void setMaxActive(int maxActive){ Host.this.maxActive = maxActive; }
+                @Override public int getMaxIdle(){ return maxIdle; }
+                @Override public void setMaxIdle(int maxIdle){ Host.this.maxIdle = maxIdle; }
+            }, "jlibs.nio:type=ConnectionPool,endpoint="+ObjectName.quote(key));
+        }
+
+        public int getActive(){ return active.get(); }
+        public int getWaiting(){ return waiting.get(); }
+        public long getCreated(){ return created.sum(); }
+        public long getReused(){ return reused.sum(); }
+        public long getMigrated(){ return migrated.sum(); }
+        public long getStale(){ return stale.sum(); }
+
+        public int getIdle(){
+            int count = 0;
+            for(int i=0; i<idle.length(); i++)
+                count += idle.get(i);
+            return count;
+        }
+
+        private boolean tryActivate(){
+            while(true){
+                int count = active.get();
+                if(count>=maxActive)
+                    return false;
+                if(active.compareAndSet(count, count+1))
+                    return true;
+            }
+        }
+
+        void deactivate(){
+            active.decrementAndGet();
+            wakeup();
+        }
+
+        /** called by reactor when connection is added to its pool */
+        void parked(Reactor reactor){
+            idle.incrementAndGet(reactor.id);
+            deactivate();
+        }
+
+        /** called by reactor when connection is removed from its pool */
+        void unparked(Reactor reactor){
+            idle.decrementAndGet(reactor.id);
+            active.incrementAndGet();
+        }
+
+        boolean canPark(){
+            return getIdle()<maxIdle;
+        }
+
+        private void wakeup(){
+            Waiter waiter = waiters.poll();
+            if(waiter!=null){
+                waiting.decrementAndGet();
+                if(DEBUG)
+                    println("sharedConnectionPool.wakeup("+key+")");
+                waiter.reactor.invokeLater(() -> acquire(waiter.reactor, this, waiter.endpoint, waiter.proxy, waiter.listener, true));
+            }
+        }
+
+        @Override
+        public String toString(){
+            return key;
+        }
+    }
+
+    /*-------------------------------------------------[ Options ]---------------------------------------------------*/
+
+    public static class Defaults{
+        public static int MAX_ACTIVE = 100;
+        public static int MAX_IDLE = 100;
+        public static int MAX_WAITING = 10000;
+    }
+}
@@ -279,6 +279,18 @@ public final class Socket implements Transport{
         }
     }
 
+    /**
+     * read interest that doesn't notify input listener.
+     * used to detect peer closing idle connections in pool
+     */
+    void setIdleReadInterest(boolean interested){
+        if(newInterests==-1){
+            int ops = selectionKey.interestOps();
+            selectionKey.interestOps(interested ? ops|OP_READ : ops&~OP_READ);
+        }else
+            newInterests = interested ? newInterests|OP_READ : newInterests&~OP_READ;
+    }
+
     void wakeupNow(){
         try{
             if(peekInInterested){
@@ -20,7 +20,8 @@ import jlibs.nio.listeners.Socks4Tunnel;
 import jlibs.nio.listeners.Socks5Tunnel;
 import jlibs.nio.listeners.Task;
 
-import javax.net.ssl.SSLEngine;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.function.Consumer;
 
 /**
@@ -57,12 +58,17 @@ public class SocksProxy extends Proxy{
                 listener.accept(result);
                 return;
             }
+            con.reactor.resolver.resolve(endpoint.host, address -> startTunnel(con, address));
+        }
+
+        private void startTunnel(Connection con, Result<InetAddress> address){
             try{
+                InetSocketAddress socketAddress = new InetSocketAddress(address.get(), endpoint.port);
                 Task task;
                 if(version==4)
-                    task = new Socks4Tunnel(user, endpoint.socketAddress());
+                    task = new Socks4Tunnel(user, socketAddress);
                 else
-                    task = new Socks5Tunnel(user, password, endpoint.socketAddress());
+                    task = new Socks5Tunnel(user, password, socketAddress);
                 new IOListener().setCallback(this, con).start(task, con);
             }catch(Throwable thr){
                 con.close();
@@ -74,11 +80,8 @@ public class SocksProxy extends Proxy{
         public void completed(Connection con, Throwable thr){
             if(thr==null){
                 try{
-                    if(endpoint.sslContext!=null){
-                        SSLEngine engine = endpoint.sslContext.createSSLEngine();
-                        engine.setUseClientMode(true);
-                        new SSLSocket(con.in(), con.out(), engine);
-                    }
+                    if(endpoint.sslContext!=null)
+                        new SSLSocket(con.in(), con.out(), endpoint.createSSLEngine(true));
                 }catch(Throwable thr1){
                     con.close();
                     listener.accept(new Result<>(thr1));
@@ -21,6 +21,10 @@ import java.net.Socket;
 import java.net.SocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+import static jlibs.nio.Debugger.DEBUG;
+import static jlibs.nio.Debugger.println;
 
 /**
  * @author Santhosh Kumar Tekuri
@@ -46,6 +50,15 @@ public class TCPConnection extends Connection<SocketChannel>{
         init();
     }
 
+    private TCPConnection(TCPConnection migrated, SharedConnectionPool.Host sharedHost) throws IOException{
+        super(migrated.selectable, null);
+        server = null;
+        id = migrated.id;
+        this.sharedHost = sharedHost;
+        ++reactor.connected;
+        init();
+    }
+
     protected void init() throws IOException{
         uniqueID = (server==null ? "C" : "A")+id;
         Socket socket = selectable.socket();
@@ -80,8 +93,59 @@ public class TCPConnection extends Connection<SocketChannel>{
         return buf.toString();
     }
 
+    /*-------------------------------------------------[ Migration ]---------------------------------------------------*/
+
+    /**
+     * tells whether this connection can be moved to another reactor.
+     * only idle client connections without any filters can be migrated
+     */
+    public boolean isMigratable(){
+        return server==null && poolNext==null && isOpen()
+                && in()==transport && out()==transport
+                && !transport.peekInInterested && !transport.peekOutInterested;
+    }
+
+    /**
+     * moves this connection to given reactor. this object must not be used
+     * after this call. listener is notified in target reactor with the
+     * connection that replaces this
+     */
+    public void migrate(Reactor target, Consumer<Result<Connection>> listener){
+        if(!isMigratable())
+            throw new IllegalStateException(this+" is not migratable");
+        if(DEBUG)
+            println(this+".migrate("+target+")");
+        selectionKey.cancel();
+        --reactor.connected;
+        SharedConnectionPool.Host host = sharedHost;
+        sharedHost = null;
+        target.invokeLater(() -> {
+            TCPConnection con;
+            try{
+                con = new TCPConnection(this, host);
+            }catch(Throwable thr){
+                try{
+                    selectable.close();
+                }catch(IOException ignore){
+                    // ignore
+                }
+                if(host!=null)
+                    host.deactivate();
+                listener.accept(new Result<>(thr));
+                return;
+            }
+            listener.accept(new Result<>(con));
+        });
+    }
+
     @Override
     void closing(){
+        if(poolNext!=null)
+            reactor.connectionPool.remove(this);
+        if(sharedHost!=null){
+            sharedHost.deactivate();
+            sharedHost = null;
+        }
         if(server==null)
             --reactor.connected;
         else{
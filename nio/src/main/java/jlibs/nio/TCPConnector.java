@@ -33,7 +33,7 @@ public class TCPConnector extends NBChannel<SocketChannel>{
     public final long id;
     private final SelectionKey selectionKey;
     public TCPConnector() throws IOException{
-        super(SocketChannel.open());
+        super(Reactor.SELECTOR_PROVIDER.openSocketChannel());
         selectionKey = selectable.register(reactor.selector, 0, this);
         id = ++reactor.lastConnectID;
         ++reactor.connectionPending;
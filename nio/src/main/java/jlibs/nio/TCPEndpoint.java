@@ -22,14 +22,12 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.function.Consumer;
 
 import static java.util.Objects.requireNonNull;
-import static jlibs.nio.Debugger.DEBUG;
-import static jlibs.nio.Debugger.println;
 
 /**
  * @author Santhosh Kumar Tekuri
@@ -76,12 +74,27 @@ public class TCPEndpoint{
             sslContext = SSLUtil.defaultContext();
     }
 
+    /**
+     * resolves host using blocking lookup.
+     * connections are made using {@link Reactor#resolver} instead
+     */
     public InetSocketAddress socketAddress(){
         return new InetSocketAddress(host, port);
     }
 
     public SSLContext sslContext;
 
+    /**
+     * client engines are created with peer host and port,
+     * so that sessions can be resumed
+     */
+    public SSLEngine createSSLEngine(boolean clientMode){
+        SSLSocket.configureSessionCache(sslContext);
+        SSLEngine engine = clientMode ? sslContext.createSSLEngine(host, port) : sslContext.createSSLEngine();
+        engine.setUseClientMode(clientMode);
+        return engine;
+    }
+
     @Override
     public final String toString(){
         return toString;
@@ -92,11 +105,8 @@ public class TCPEndpoint{
             @Override
             public void accept(TCPConnection con){
                 try{
-                    if(sslContext!=null){
-                        SSLEngine engine = sslContext.createSSLEngine();
-                        engine.setUseClientMode(false);
-                        new SSLSocket(con.in(), con.out(), engine);
-                    }
+                    if(sslContext!=null)
+                        new SSLSocket(con.in(), con.out(), createSSLEngine(false));
                 }catch(Throwable thr){
                     Reactor.current().handleException(thr);
                     con.close();
@@ -120,30 +130,17 @@ public class TCPEndpoint{
     }
 
     public void getConnection(Consumer<Result<Connection>> listener, Proxy proxy){
-        Reactor reactor = Reactor.current();
-        while(true){
-            Connection con = reactor.connectionPool.remove(toString());
-            if(con==null)
-                break;
-            ByteBuffer buffer = reactor.allocator.allocate(1);
-            int read = -1;
-            try{
-                read = con.in().read(buffer);
-            }catch(Throwable ignore){
-                // ignore.printStackTrace();
-            }
-            reactor.allocator.free(buffer);
-            assert read<=0;
-            if(read==-1){
-                if(DEBUG)
-                    println(con+".isBroken=true");
-                con.close();
-            }else{
-                listener.accept(new Result<>(con));
-                return;
-            }
+        SharedConnectionPool sharedPool = SharedConnectionPool.INSTANCE;
+        if(sharedPool!=null){
+            sharedPool.getConnection(this, proxy, listener);
+            return;
         }
-        newConnection(listener, proxy);
+        // stale connections are evicted by reactor, when they become readable
+        Connection con = Reactor.current().connectionPool.remove(toString());
+        if(con!=null)
+            listener.accept(new Result<>(con));
+        else
+            newConnection(listener, proxy);
     }
 
     public void newConnection(Consumer<Result<Connection>> listener, Proxy proxy){
@@ -160,10 +157,15 @@ public class TCPEndpoint{
         }
 
         public void start(){
+            Reactor.current().resolver.resolve(host, this::resolved);
+        }
+
+        private void resolved(Result<InetAddress> result){
             TCPConnector connector = null;
             try{
+                InetSocketAddress address = new InetSocketAddress(result.get(), port);
                 connector = new TCPConnector();
-                connector.connect(socketAddress(), this);
+                connector.connect(address, this);
             }catch(Throwable thr){
                 if(connector!=null)
                     connector.close();
@@ -182,11 +184,8 @@ public class TCPEndpoint{
                 return;
             }
             try{
-                if(sslContext!=null){
-                    SSLEngine engine = sslContext.createSSLEngine();
-                    engine.setUseClientMode(true);
-                    new SSLSocket(con.in(), con.out(), engine);
-                }
+                if(sslContext!=null)
+                    new SSLSocket(con.in(), con.out(), createSSLEngine(true));
             }catch(Throwable thr){
                 con.shutdown();
                 listener.accept(new Result<>(thr));
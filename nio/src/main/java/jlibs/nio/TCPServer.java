@@ -19,11 +19,17 @@ import javax.management.ObjectName;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import static jlibs.nio.Debugger.DEBUG;
 import static jlibs.nio.Debugger.println;
@@ -35,26 +41,76 @@ public class TCPServer extends NBChannel<ServerSocketChannel>{
     private static final AtomicInteger COUNTER = new AtomicInteger();
 
     public final long id = COUNTER.incrementAndGet();
+    public final AcceptMode acceptMode;
+    private final NBChannel<ServerSocketChannel> acceptors[];
+    private final Reactor acceptor;
+    private final AtomicIntegerArray acceptCounts;
+
     public TCPServer(Listener listener) throws IOException{
-        super(ServerSocketChannel.open());
+        this(listener, AcceptMode.ALL);
+    }
 
-        for(Reactor reactor: Reactors.get()){
-            reactor.invokeLater(() -> {
-                try{
-                    reactor.register(this);
-                }catch(IOException ex){
-                    reactor.handleException(ex);
-                }
-            });
-        }
+    @SuppressWarnings("unchecked")
+    public TCPServer(Listener listener, AcceptMode acceptMode) throws IOException{
+        super(Reactor.SELECTOR_PROVIDER.openServerSocketChannel());
         this.listener = listener;
+        this.acceptMode = acceptMode;
         uniqueID = "S"+id;
+
+        List<Reactor> reactors = Reactors.get();
+        acceptCounts = new AtomicIntegerArray(reactors.size());
+        if(acceptMode==AcceptMode.REUSE_PORT){
+            acceptors = new NBChannel[reactors.size()];
+            acceptors[0] = this;
+            try{
+                SocketOption<Boolean> reusePort = reusePortOption(selectable);
+                selectable.setOption(reusePort, true);
+                for(int i=1; i<acceptors.length; i++){
+                    ServerSocketChannel channel = Reactor.SELECTOR_PROVIDER.openServerSocketChannel();
+                    acceptors[i] = new Shard(channel);
+                    channel.setOption(reusePort, true);
+                }
+            }catch(IOException | RuntimeException ex){
+                closeShards();
+                selectable.close();
+                throw ex;
+            }
+        }else
+            acceptors = null;
+
+        if(acceptMode==AcceptMode.ROUND_ROBIN || acceptMode==AcceptMode.LEAST_LOADED)
+            acceptor = reactors.get((int)(id%reactors.size()));
+        else
+            acceptor = null;
+    }
+
+    private void register(Reactor reactor){
+        reactor.invokeLater(() -> {
+            try{
+                reactor.register(this);
+            }catch(IOException ex){
+                reactor.handleException(ex);
+            }
+        });
     }
 
     private ObjectName objName;
     @Trace(condition=Debugger.DEBUG, args="$1")
     public TCPServer bind(SocketAddress local) throws IOException{
         selectable.bind(local, BACKLOG);
+        if(acceptors!=null){
+            local = selectable.getLocalAddress();
+            for(int i=1; i<acceptors.length; i++)
+                acceptors[i].selectable.bind(local, BACKLOG);
+        }
+
+        // register after bind, because unbound server socket is selected as ready for accept
+        if(acceptor==null){
+            for(Reactor reactor: Reactors.get())
+                register(reactor);
+        }else
+            register(acceptor);
+
         String boundToStr = ((InetSocketAddress)local).getHostString();
         int port = ((InetSocketAddress)local).getPort();
         objName = Management.register(new Management.ServerMXBean(){
@@ -71,6 +127,16 @@ public class TCPServer extends NBChannel<ServerSocketChannel>{
                 return accepted.get();
             }
 
+            @Override
+            public String getAcceptMode(){
+                return acceptMode.name();
+            }
+
+            @Override
+            public Map<String, Integer> getReactorAccepts(){
+                return TCPServer.this.getReactorAccepts();
+            }
+
             @Override
             public boolean isOpen(){
                 return TCPServer.this.isOpen();
@@ -80,6 +146,16 @@ public class TCPServer extends NBChannel<ServerSocketChannel>{
             public void close() throws IOException{
                 TCPServer.this.close();
             }
+
+            @Override
+            public Map<String, Map<String, Long>> getLatency(){
+                return listener.getLatency();
+            }
+
+            @Override
+            public void resetLatency(){
+                listener.resetLatency();
+            }
         }, "jlibs.nio:type=Server,boundTo=\""+boundToStr+"\",port="+port);
         return this;
     }
@@ -91,6 +167,16 @@ public class TCPServer extends NBChannel<ServerSocketChannel>{
     private Listener listener;
     public static interface Listener{
         public void accept(TCPConnection con);
+
+        /**
+         * returns latency histograms in microseconds, keyed by phase.
+         * exposed on {@link Management.ServerMXBean}
+         */
+        public default Map<String, Map<String, Long>> getLatency(){
+            return Collections.emptyMap();
+        }
+
+        public default void resetLatency(){}
     }
 
     final AtomicInteger accepted = new AtomicInteger();
@@ -98,12 +184,66 @@ public class TCPServer extends NBChannel<ServerSocketChannel>{
         return accepted.get();
     }
 
+    /**
+     * returns number of connections accepted so far by each reactor
+     */
+    public Map<String, Integer> getReactorAccepts(){
+        Map<String, Integer> map = new LinkedHashMap<>();
+        for(Reactor reactor: Reactors.get())
+            map.put(reactor.toString(), acceptCounts.get(reactor.id));
+        return map;
+    }
+
+    NBChannel<ServerSocketChannel> acceptor(Reactor reactor){
+        return acceptors==null ? this : acceptors[reactor.id];
+    }
+
     @Override
     protected void process(boolean timeout){
+        accept(selectable);
+    }
+
+    private void accept(ServerSocketChannel channel){
         try{
-            SocketChannel socket = selectable.accept();
+            SocketChannel socket = channel.accept();
             if(socket==null)
                 return;
+            Reactor reactor = Reactor.current();
+            Reactor target = acceptor==null ? reactor : handOffTo();
+            if(target==reactor)
+                accepted(socket);
+            else
+                target.invokeLater(() -> accepted(socket));
+        }catch(IOException ex){
+            Reactor.current().handleException(ex);
+        }
+    }
+
+    private int nextReactor;
+    private Reactor handOffTo(){
+        List<Reactor> reactors = Reactors.get();
+        if(acceptMode==AcceptMode.ROUND_ROBIN){
+            if(nextReactor==reactors.size())
+                nextReactor = 0;
+            return reactors.get(nextReactor++);
+        }else{
+            Reactor target = null;
+            int minLoad = Integer.MAX_VALUE;
+            for(Reactor reactor: reactors){
+                // reactor's own counters are confined to its thread, read its published load
+                int load = reactor.load;
+                if(load<minLoad){
+                    target = reactor;
+                    minLoad = load;
+                }
+            }
+            return target;
+        }
+    }
+
+    private void accepted(SocketChannel socket){
+        Reactor reactor = Reactor.current();
+        try{
             TCPConnection connection;
             try{
                 connection = new TCPConnection(this, socket);
@@ -114,9 +254,10 @@ public class TCPServer extends NBChannel<ServerSocketChannel>{
                 socket.close();
                 throw ex;
             }
+            acceptCounts.incrementAndGet(reactor.id);
             listener.accept(connection);
         }catch(IOException ex){
-            Reactor.current().handleException(ex);
+            reactor.handleException(ex);
         }
     }
 
@@ -139,9 +280,19 @@ public class TCPServer extends NBChannel<ServerSocketChannel>{
             // ignore
         }
         super.close();
+        closeShards();
         Management.unregister(objName);
     }
 
+    private void closeShards(){
+        if(acceptors!=null){
+            for(int i=1; i<acceptors.length; i++){
+                if(acceptors[i]!=null)
+                    acceptors[i].close();
+            }
+        }
+    }
+
     @Override
     public String getExecutionID(){
         return Reactor.current().executionID+'/'+uniqueID;
@@ -156,6 +307,75 @@ public class TCPServer extends NBChannel<ServerSocketChannel>{
         return name+"["+str+"]";
     }
 
+    /*-------------------------------------------------[ AcceptMode ]---------------------------------------------------*/
+
+    /**
+     * specifies how accepting of new connections is distributed
+     * among {@link Reactors}
+     */
+    public static enum AcceptMode{
+        /**
+         * single listening socket is registered with every reactor.
+         * every reactor wakes up on new connection, but only one
+         * of them succeeds in accepting it
+         */
+        ALL,
+
+        /**
+         * each reactor owns its own listening socket bound with
+         * {@code SO_REUSEPORT}, so that kernel distributes connections
+         * among them. Requires platform support for {@code SO_REUSEPORT}
+         */
+        REUSE_PORT,
+
+        /**
+         * single reactor accepts connections and hands them over
+         * to reactors in round-robin fashion
+         */
+        ROUND_ROBIN,
+
+        /**
+         * single reactor accepts connections and hands them over
+         * to the reactor having least number of connections
+         */
+        LEAST_LOADED
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption(ServerSocketChannel channel){
+        try{
+            // StandardSocketOptions.SO_REUSEPORT is available since jdk 9
+            SocketOption<Boolean> option = (SocketOption<Boolean>)StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            if(channel.supportedOptions().contains(option))
+                return option;
+        }catch(ReflectiveOperationException ex){
+            // not available
+        }
+        throw new UnsupportedOperationException("SO_REUSEPORT is not supported on this platform");
+    }
+
+    private class Shard extends NBChannel<ServerSocketChannel>{
+        private Shard(ServerSocketChannel selectable) throws IOException{
+            super(selectable);
+            uniqueID = TCPServer.this.uniqueID;
+        }
+
+        @Override
+        protected void process(boolean timeout){
+            accept(selectable);
+        }
+
+        @Override
+        public String getExecutionID(){
+            return TCPServer.this.getExecutionID();
+        }
+
+        @Override
+        public String toString(){
+            return TCPServer.this.toString();
+        }
+    }
+
     /*-------------------------------------------------[ Options ]---------------------------------------------------*/
 
     public static int BACKLOG = 0;
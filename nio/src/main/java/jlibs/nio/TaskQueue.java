@@ -0,0 +1,104 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free multi-producer single-consumer FIFO queue of tasks.
+ * <p>
+ * producers swap the tail and then link the previous tail to new node.
+ * only the reactor thread is allowed to call {@link #poll()}
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+final class TaskQueue{
+    private static final class Node{
+        Runnable task;
+        long queuedAt;
+        volatile Node next;
+
+        Node(Runnable task){
+            this.task = task;
+        }
+    }
+
+    private Node head = new Node(null);
+    private final AtomicReference<Node> tail = new AtomicReference<>(head);
+
+    private final LongAdder added = new LongAdder();
+    private volatile long removed;
+
+    /**
+     * {@link System#nanoTime()} when the task last polled was added,
+     * zero if metrics were not being collected at that time
+     */
+    long queuedAt;
+
+    public void add(Runnable task){
+        Node node = new Node(task);
+        if(Management.COLLECT_METRICS)
+            node.queuedAt = System.nanoTime();
+        added.increment();
+        tail.getAndSet(node).next = node;
+    }
+
+    public void addAll(Collection<? extends Runnable> tasks){
+        Node first = null, last = null;
+        int count = 0;
+        long queuedAt = Management.COLLECT_METRICS ? System.nanoTime() : 0L;
+        for(Runnable task: tasks){
+            Node node = new Node(task);
+            node.queuedAt = queuedAt;
+            if(first==null)
+                first = node;
+            else
+                last.next = node;
+            last = node;
+            ++count;
+        }
+        if(first!=null){
+            added.add(count);
+            tail.getAndSet(last).next = first;
+        }
+    }
+
+    public Runnable poll(){
+        Node next = head.next;
+        if(next==null)
+            return null;
+        Runnable task = next.task;
+        next.task = null;
+        queuedAt = next.queuedAt;
+        head = next;
+        ++removed;
+        return task;
+    }
+
+    public boolean isEmpty(){
+        return head.next==null;
+    }
+
+    /**
+     * returns approximate number of tasks in queue.
+     * can be called from any thread
+     */
+    public long size(){
+        return Math.max(0, added.sum()-removed);
+    }
+}
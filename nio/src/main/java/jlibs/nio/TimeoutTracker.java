@@ -0,0 +1,287 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio;
+
+import jlibs.core.util.Heap;
+
+/**
+ * Tracks timeouts of channels owned by a reactor.
+ * <p>
+ * A channel is being tracked if its {@code timerIndex} is not {@code -1}.
+ * {@link #time} is updated by reactor once per select loop iteration.
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+abstract class TimeoutTracker{
+    long time = System.currentTimeMillis();
+
+    public abstract boolean isTracking();
+    public abstract void startTimer(NBChannel channel, long timeout);
+    public abstract void stopTimer(NBChannel channel);
+
+    /**
+     * returns next channel whose timeout is before {@link #time}.
+     * the channel returned is no longer tracked
+     */
+    public abstract NBChannel next();
+
+    /**
+     * returns the time in milliseconds, reactor can block in select
+     */
+    public abstract long waitTime();
+
+    /*-------------------------------------------------[ Heap ]---------------------------------------------------*/
+
+    /**
+     * binary heap ordered by timeoutAt.
+     * start and stop timer are O(log n)
+     */
+    static final class HeapTracker extends TimeoutTracker{
+        private final Heap<NBChannel> heap = new Heap<NBChannel>(1000){
+            @Override
+            protected void setIndex(NBChannel channel, int index){
+                channel.timerIndex = index;
+            }
+
+            @Override
+            protected int compare(NBChannel channel1, NBChannel channel2){
+                return channel1.timeoutAt<channel2.timeoutAt ? -1 : (channel1.timeoutAt==channel2.timeoutAt?0:+1);
+            }
+        };
+
+        @Override
+        public boolean isTracking(){
+            return heap.size()>0;
+        }
+
+        @Override
+        public void startTimer(NBChannel channel, long timeout){
+            if(channel.timerIndex!=-1)
+                stopTimer(channel);
+            if(timeout>0){
+                channel.timeoutAt = System.currentTimeMillis() + timeout;
+                heap.add(channel);
+            }
+        }
+
+        @Override
+        public void stopTimer(NBChannel channel){
+            assert channel.timerIndex!=-1;
+            NBChannel removed = heap.removeAt(channel.timerIndex);
+            assert removed==channel;
+            assert channel.timerIndex==-1;
+            channel.timeoutAt = Long.MAX_VALUE;
+        }
+
+        @Override
+        public NBChannel next(){
+            NBChannel root = heap.root();
+            if(root!=null && root.timeoutAt<time){
+                assert root.timerIndex==0;
+                heap.removeAt(0);
+                return root;
+            }else
+                return null;
+        }
+
+        @Override
+        public long waitTime(){
+            return heap.size()==0 ? 0L : Math.max(1000L, heap.root().timeoutAt-System.currentTimeMillis());
+        }
+    }
+
+    /*-------------------------------------------------[ TimingWheel ]---------------------------------------------------*/
+
+    /**
+     * hierarchical hashed timing wheel.
+     * <p>
+     * start and stop timer are O(1). the first wheel has 256 slots of one tick each,
+     * remaining four wheels have 64 slots each, covering 64 times the previous wheel.
+     * when first wheel completes a rotation, the current slot of next wheel is cascaded
+     * down into lower wheels.
+     * <p>
+     * timeouts are rounded up to tick boundary, so a channel may timeout
+     * at most one tick later than requested
+     */
+    static final class WheelTracker extends TimeoutTracker{
+        private static final int ROOT_BITS = 8;
+        private static final int ROOT_SIZE = 1<<ROOT_BITS;
+        private static final int ROOT_MASK = ROOT_SIZE-1;
+        private static final int LEVEL_BITS = 6;
+        private static final int LEVEL_SIZE = 1<<LEVEL_BITS;
+        private static final int LEVEL_MASK = LEVEL_SIZE-1;
+        private static final int LEVELS = 4;
+        private static final long MAX_TICKS = (1L<<(ROOT_BITS+LEVELS*LEVEL_BITS))-1;
+
+        private final long tick;
+        private final NBChannel slots[] = new NBChannel[ROOT_SIZE+LEVELS*LEVEL_SIZE];
+        private final long nonEmpty[] = new long[slots.length/64];
+        private int count;
+
+        /** tick being processed. all slots for ticks before it are empty */
+        private long base;
+
+        WheelTracker(long tick){
+            if(tick<=0)
+                throw new IllegalArgumentException("tick: "+tick);
+            this.tick = tick;
+            base = time/tick;
+        }
+
+        @Override
+        public boolean isTracking(){
+            return count>0;
+        }
+
+        @Override
+        public void startTimer(NBChannel channel, long timeout){
+            if(channel.timerIndex!=-1)
+                stopTimer(channel);
+            if(timeout>0){
+                if(count==0)
+                    base = Math.max(base, time/tick);
+                channel.timeoutAt = time + timeout;
+                add(channel);
+                ++count;
+            }
+        }
+
+        @Override
+        public void stopTimer(NBChannel channel){
+            assert channel.timerIndex!=-1;
+            remove(channel);
+            --count;
+            channel.timeoutAt = Long.MAX_VALUE;
+        }
+
+        @Override
+        public NBChannel next(){
+            long now = time/tick;
+            if(count==0){
+                base = Math.max(base, now+1);
+                return null;
+            }
+            while(base<=now){
+                int slot = (int)(base & ROOT_MASK);
+                NBChannel channel = slots[slot];
+                if(channel!=null){
+                    remove(channel);
+                    --count;
+                    return channel;
+                }
+
+                // skip empty slots till end of current rotation
+                int nextSlot = nextNonEmpty(slot+1, ROOT_SIZE);
+                base = Math.min(base+(nextSlot-slot), now+1);
+                if((base & ROOT_MASK)==0)
+                    cascade();
+            }
+            return null;
+        }
+
+        @Override
+        public long waitTime(){
+            if(count==0)
+                return 0L;
+            // slots beyond end of current rotation, and cascaded
+            // channels, can't expire before next rotation
+            int slot = (int)(base & ROOT_MASK);
+            long nextTick = base+(nextNonEmpty(slot, ROOT_SIZE)-slot);
+            return Math.max(1000L, nextTick*tick-System.currentTimeMillis());
+        }
+
+        private void add(NBChannel channel){
+            long expires = channel.timeoutAt/tick + 1;
+            long ticks = expires-base;
+            int index;
+            if(ticks<0)
+                index = (int)(base & ROOT_MASK);
+            else if(ticks<ROOT_SIZE)
+                index = (int)(expires & ROOT_MASK);
+            else{
+                if(ticks>MAX_TICKS)
+                    expires = base+MAX_TICKS;
+                int level = 0;
+                int shift = ROOT_BITS+LEVEL_BITS;
+                while(level<LEVELS-1 && ticks>=(1L<<shift)){
+                    ++level;
+                    shift += LEVEL_BITS;
+                }
+                index = ROOT_SIZE + level*LEVEL_SIZE + (int)((expires>>(shift-LEVEL_BITS)) & LEVEL_MASK);
+            }
+
+            NBChannel head = slots[index];
+            channel.timerPrev = null;
+            channel.timerNext = head;
+            if(head==null)
+                nonEmpty[index>>>6] |= 1L<<index;
+            else
+                head.timerPrev = channel;
+            slots[index] = channel;
+            channel.timerIndex = index;
+        }
+
+        private void remove(NBChannel channel){
+            int index = channel.timerIndex;
+            NBChannel prev = channel.timerPrev;
+            NBChannel next = channel.timerNext;
+            if(prev==null){
+                slots[index] = next;
+                if(next==null)
+                    nonEmpty[index>>>6] &= ~(1L<<index);
+            }else
+                prev.timerNext = next;
+            if(next!=null)
+                next.timerPrev = prev;
+            channel.timerPrev = channel.timerNext = null;
+            channel.timerIndex = -1;
+        }
+
+        private void cascade(){
+            int shift = ROOT_BITS;
+            for(int level=0; level<LEVELS; level++){
+                int slot = (int)((base>>shift) & LEVEL_MASK);
+                int index = ROOT_SIZE + level*LEVEL_SIZE + slot;
+                NBChannel channel = slots[index];
+                if(channel!=null){
+                    slots[index] = null;
+                    nonEmpty[index>>>6] &= ~(1L<<index);
+                    while(channel!=null){
+                        NBChannel next = channel.timerNext;
+                        add(channel);
+                        channel = next;
+                    }
+                }
+                if(slot!=0)
+                    break;
+                shift += LEVEL_BITS;
+            }
+        }
+
+        /** returns first non-empty root slot in [from, to), or to if none */
+        private int nextNonEmpty(int from, int to){
+            while(from<to){
+                long bits = nonEmpty[from>>>6] & (-1L<<from);
+                if(bits!=0){
+                    int found = (from & ~63) + Long.numberOfTrailingZeros(bits);
+                    return Math.min(found, to);
+                }
+                from = (from & ~63) + 64;
+            }
+            return to;
+        }
+    }
+}
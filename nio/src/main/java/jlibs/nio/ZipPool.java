@@ -0,0 +1,186 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-reactor pool of {@link Deflater} and {@link Inflater} instances.
+ * <p>
+ * creating zlib stream allocates native memory, which is released only on
+ * {@code end()} or gc. pooled instances are {@code reset()} and reused instead.
+ * pools are thread confined, so allocate and free must be called from reactor thread.
+ * <p>
+ * statistics of all deflaters and inflaters freed to pool are available as
+ * {@link Management.CompressionMXBean}
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+public final class ZipPool{
+    /** maximum number of idle instances retained per reactor, for each kind */
+    public static int MAX_IDLE = Defaults.MAX_IDLE;
+
+    private static final ThreadLocal<ZipPool> POOLS = ThreadLocal.withInitial(ZipPool::new);
+
+    private final ArrayDeque<Deflater> deflaters[] = newDeques();
+    private final ArrayDeque<Inflater> inflaters[] = newDeques();
+
+    @SuppressWarnings("unchecked")
+    private static <T> ArrayDeque<T>[] newDeques(){
+        return new ArrayDeque[]{ new ArrayDeque<>(), new ArrayDeque<>() };
+    }
+
+    private ZipPool(){}
+
+    /*-------------------------------------------------[ Deflater ]---------------------------------------------------*/
+
+    private static final class PooledDeflater extends Deflater{
+        private final boolean nowrap;
+        private PooledDeflater(int level, boolean nowrap){
+            super(level, nowrap);
+            this.nowrap = nowrap;
+        }
+    }
+
+    public static Deflater allocateDeflater(int level, int strategy, boolean nowrap){
+        Deflater deflater = POOLS.get().deflaters[nowrap ? 1 : 0].poll();
+        if(deflater==null){
+            STATISTICS.deflatersCreated.increment();
+            deflater = new PooledDeflater(level, nowrap);
+        }else{
+            STATISTICS.deflatersReused.increment();
+            deflater.setLevel(level);
+        }
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+
+    /**
+     * returns deflater to pool, after recording its statistics.
+     * {@code nanos} is the time spent in compression.
+     * deflaters that are not allocated from this pool are ended
+     */
+    public static void free(Deflater deflater, long nanos){
+        STATISTICS.uncompressedOut.add(deflater.getBytesRead());
+        STATISTICS.compressedOut.add(deflater.getBytesWritten());
+        STATISTICS.deflateNanos.add(nanos);
+        if(deflater instanceof PooledDeflater){
+            ArrayDeque<Deflater> deque = POOLS.get().deflaters[((PooledDeflater)deflater).nowrap ? 1 : 0];
+            if(deque.size()<MAX_IDLE){
+                deflater.reset();
+                deque.push(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    /*-------------------------------------------------[ Inflater ]---------------------------------------------------*/
+
+    private static final class PooledInflater extends Inflater{
+        private final boolean nowrap;
+        private PooledInflater(boolean nowrap){
+            super(nowrap);
+            this.nowrap = nowrap;
+        }
+    }
+
+    public static Inflater allocateInflater(boolean nowrap){
+        Inflater inflater = POOLS.get().inflaters[nowrap ? 1 : 0].poll();
+        if(inflater==null){
+            STATISTICS.inflatersCreated.increment();
+            inflater = new PooledInflater(nowrap);
+        }else
+            STATISTICS.inflatersReused.increment();
+        return inflater;
+    }
+
+    /**
+     * returns inflater to pool, after recording its statistics.
+     * {@code nanos} is the time spent in decompression.
+     * inflaters that are not allocated from this pool are ended
+     */
+    public static void free(Inflater inflater, long nanos){
+        STATISTICS.compressedIn.add(inflater.getBytesRead());
+        STATISTICS.uncompressedIn.add(inflater.getBytesWritten());
+        STATISTICS.inflateNanos.add(nanos);
+        if(inflater instanceof PooledInflater){
+            ArrayDeque<Inflater> deque = POOLS.get().inflaters[((PooledInflater)inflater).nowrap ? 1 : 0];
+            if(deque.size()<MAX_IDLE){
+                inflater.reset();
+                deque.push(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+
+    /*-------------------------------------------------[ Statistics ]---------------------------------------------------*/
+
+    public static final Statistics STATISTICS = new Statistics();
+
+    public static final class Statistics{
+        private final LongAdder deflatersCreated = new LongAdder();
+        private final LongAdder deflatersReused = new LongAdder();
+        private final LongAdder uncompressedOut = new LongAdder();
+        private final LongAdder compressedOut = new LongAdder();
+        private final LongAdder deflateNanos = new LongAdder();
+
+        private final LongAdder inflatersCreated = new LongAdder();
+        private final LongAdder inflatersReused = new LongAdder();
+        private final LongAdder compressedIn = new LongAdder();
+        private final LongAdder uncompressedIn = new LongAdder();
+        private final LongAdder inflateNanos = new LongAdder();
+
+        private Statistics(){
+            Management.register(new Management.CompressionMXBean(){
+                @Override public long getDeflatersCreated(){ return deflatersCreated.sum(); }
+                @Override public long getDeflatersReused(){ return deflatersReused.sum(); }
+                @Override public long getDeflateInputBytes(){ return uncompressedOut.sum(); }
+                @Override public long getDeflateOutputBytes(){ return compressedOut.sum(); }
+                @Override public double getCompressionRatio(){ return Statistics.this.getCompressionRatio(); }
+                @Override public long getDeflateTime(){ return TimeUnit.NANOSECONDS.toMillis(deflateNanos.sum()); }
+                @Override public long getInflatersCreated(){ return inflatersCreated.sum(); }
+                @Override public long getInflatersReused(){ return inflatersReused.sum(); }
+                @Override public long getInflateInputBytes(){ return compressedIn.sum(); }
+                @Override public long getInflateOutputBytes(){ return uncompressedIn.sum(); }
+                @Override public long getInflateTime(){ return TimeUnit.NANOSECONDS.toMillis(inflateNanos.sum()); }
+            }, "jlibs.nio:type=Compression");
+        }
+
+        /** returns compressed size divided by uncompressed size, of all deflated data */
+        public double getCompressionRatio(){
+            long uncompressed = uncompressedOut.sum();
+            return uncompressed==0 ? 0 : (double)compressedOut.sum()/uncompressed;
+        }
+
+        public long getDeflateTime(TimeUnit unit){
+            return unit.convert(deflateNanos.sum(), TimeUnit.NANOSECONDS);
+        }
+
+        public long getInflateTime(TimeUnit unit){
+            return unit.convert(inflateNanos.sum(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public static class Defaults{
+        public static int MAX_IDLE = 16;
+    }
+}
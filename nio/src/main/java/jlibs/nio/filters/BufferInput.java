@@ -97,6 +97,14 @@ public class BufferInput extends InputFilter{
         return peer.transferTo(position, count, target);
     }
 
+    /**
+     * returns unread bytes in buffer without consuming them.
+     * returns null if buffer is fully read
+     */
+    public ByteBuffer peek(){
+        return src==null ? null : src.asReadOnlyBuffer();
+    }
+
     public void drainBuffer(){
         if(src!=null){
             channel().reactor.allocator.free(src);
@@ -18,6 +18,7 @@ package jlibs.nio.filters;
 import jlibs.nio.Output;
 import jlibs.nio.OutputFilter;
 import jlibs.nio.Reactor;
+import jlibs.nio.ZipPool;
 import jlibs.nio.util.NIOUtil;
 
 import java.io.IOException;
@@ -31,11 +32,17 @@ public class DeflaterOutput extends OutputFilter{
     protected Deflater deflater;
     private ByteBuffer buffer;
     private ByteBuffer tmpBuffer;
+    private long nanos;
 
     public DeflaterOutput(Output peer){
-        this(new Deflater(), peer);
+        this(peer, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
     }
 
+    public DeflaterOutput(Output peer, int level, int strategy){
+        this(ZipPool.allocateDeflater(level, strategy, false), peer);
+    }
+
+    /** deflater is returned to {@link ZipPool} when finished */
     public DeflaterOutput(Deflater deflater, Output peer){
         super(peer);
         this.deflater = deflater;
@@ -94,7 +101,9 @@ public class DeflaterOutput extends OutputFilter{
         }
 
         while(isOpen() ? !deflater.needsInput() : !deflater.finished()){
+            long begin = System.nanoTime();
             int compressed = deflater.deflate(buffer.array(), buffer.limit(), buffer.capacity()-buffer.limit());
+            nanos += System.nanoTime()-begin;
             if(compressed>0){
                 buffer.limit(buffer.limit()+compressed);
                 if(buffer.remaining()==buffer.capacity()){
@@ -117,7 +126,7 @@ public class DeflaterOutput extends OutputFilter{
                 buffer.limit(buffer.position());
                 buffer.position(0);
                 trailerAdded = true;
-                deflater.end();
+                ZipPool.free(deflater, nanos);
                 deflater = null;
             }
         }
@@ -140,7 +149,8 @@ public class DeflaterOutput extends OutputFilter{
     @Override
     protected void detached(){
         if(deflater!=null){
-            deflater.end();
+            ZipPool.free(deflater, nanos);
+            deflater = null;
         }
         if(buffer!=null){
             Reactor.current().allocator.free(buffer);
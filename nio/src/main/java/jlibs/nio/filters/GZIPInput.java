@@ -17,6 +17,7 @@ package jlibs.nio.filters;
 
 import jlibs.nio.Input;
 import jlibs.nio.Reactor;
+import jlibs.nio.ZipPool;
 
 import java.io.EOFException;
 import java.io.IOException;
@@ -28,7 +29,7 @@ import java.util.zip.*;
  */
 public class GZIPInput extends InflaterInput{
     public GZIPInput(Input peer){
-        super(new Inflater(true), peer);
+        super(ZipPool.allocateInflater(true), peer);
     }
 
     private static final int STATE_GZIP_MAGIC = 0;
@@ -187,8 +188,7 @@ public class GZIPInput extends InflaterInput{
             buffer.clear();
             readPos = 0;
         }
-        inflater.end();
-        inflater = null;
+        releaseInflater();
     }
 
     private void readTrailer() throws IOException{
@@ -209,6 +209,8 @@ public class GZIPInput extends InflaterInput{
 
     @Override
     protected ByteBuffer detached(){
+        if(inflater!=null)
+            releaseInflater();
         if(state!=STATE_FINISHED){
             Reactor.current().allocator.free(buffer);
             buffer = null;
@@ -16,6 +16,7 @@
 package jlibs.nio.filters;
 
 import jlibs.nio.Output;
+import jlibs.nio.ZipPool;
 
 import java.nio.ByteBuffer;
 import java.util.zip.CRC32;
@@ -27,7 +28,11 @@ import java.util.zip.GZIPInputStream;
  */
 public class GZIPOutput extends DeflaterOutput{
     public GZIPOutput(Output peer){
-        super(new Deflater(Deflater.DEFAULT_COMPRESSION, true), peer);
+        this(peer, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+    }
+
+    public GZIPOutput(Output peer, int level, int strategy){
+        super(ZipPool.allocateDeflater(level, strategy, true), peer);
     }
 
     private static final byte[] HEADER_BYTES = {
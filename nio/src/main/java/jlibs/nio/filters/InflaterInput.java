@@ -18,6 +18,7 @@ package jlibs.nio.filters;
 import jlibs.nio.Input;
 import jlibs.nio.InputFilter;
 import jlibs.nio.Reactor;
+import jlibs.nio.ZipPool;
 
 import java.io.EOFException;
 import java.io.IOException;
@@ -33,11 +34,13 @@ public class InflaterInput extends InputFilter{
     protected Inflater inflater;
     protected ByteBuffer buffer;
     private ByteBuffer tmpBuffer;
+    private long nanos;
 
     public InflaterInput(Input peer){
-        this(new Inflater(false), peer);
+        this(ZipPool.allocateInflater(false), peer);
     }
 
+    /** inflater is returned to {@link ZipPool} when finished */
     protected InflaterInput(Inflater inflater, Input in){
         super(in);
         buffer = Reactor.current().allocator.allocateHeap();
@@ -70,6 +73,7 @@ public class InflaterInput extends InputFilter{
         }
 
         int pos = dst.position();
+        long begin = System.nanoTime();
         try{
             if(dst.hasArray()){
                 int uncompressed = inflate(dst.array(), dst.arrayOffset()+dst.position(), dst.remaining());
@@ -83,6 +87,7 @@ public class InflaterInput extends InputFilter{
                 tmpBuffer.limit(uncompressed);
                 dst.put(tmpBuffer);
             }
+            nanos += System.nanoTime()-begin;
             if(inflater.finished() || inflater.needsDictionary())
                 endInflater();
         }catch(DataFormatException ex){
@@ -110,7 +115,12 @@ public class InflaterInput extends InputFilter{
             Reactor.current().allocator.free(buffer);
             buffer = null;
         }
-        inflater.end();
+        releaseInflater();
+    }
+
+    /** returns inflater to pool */
+    protected void releaseInflater(){
+        ZipPool.free(inflater, nanos);
         inflater = null;
     }
 
@@ -121,8 +131,7 @@ public class InflaterInput extends InputFilter{
             tmpBuffer = null;
         }
         if(inflater!=null){
-            inflater.end();
-            inflater = null;
+            releaseInflater();
             if(buffer!=null){
                 Reactor.current().allocator.free(buffer);
                 buffer = null;
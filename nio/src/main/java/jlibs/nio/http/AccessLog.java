@@ -17,12 +17,14 @@ package jlibs.nio.http;
 
 import jlibs.core.io.FileUtil;
 import jlibs.nio.Reactors;
+import jlibs.nio.TCPEndpoint;
 import jlibs.nio.http.expr.Expression;
 import jlibs.nio.http.expr.Literal;
 import jlibs.nio.http.expr.TypeConversion;
 import jlibs.nio.http.msg.Message;
 import jlibs.nio.http.msg.Request;
 import jlibs.nio.http.msg.Response;
+import jlibs.nio.http.msg.Status;
 import jlibs.nio.log.LogHandler;
 import jlibs.nio.log.LogRecord;
 
@@ -30,11 +32,25 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
+ * Writes one line per connection, as specified by format.
+ * <p>
+ * format is compiled once into attributes. frequently used attributes such as
+ * status code, method, uri and content length are read directly from exchange,
+ * and numeric values are kept as {@code long}, so that capturing and publishing
+ * a record doesn't create intermediate strings. other attributes fall back to
+ * evaluating {@link Expression}
+ * <p>
+ * records are appended into the reusable buffer given by log handler.
+ * {@link jlibs.nio.log.AsyncFileLogHandler} encodes them into its reusable
+ * byte buffer, writing ascii chars as single bytes
+ *
  * @author Santhosh Kumar Tekuri
  */
 public class AccessLog{
@@ -54,9 +70,13 @@ public class AccessLog{
         "connection_status"
     );
 
-    private final List<Attribute> attributes = new ArrayList<>();
+    private final Attribute attributes[];
+    private final int numbers;
+    private final int texts;
 
     public AccessLog(String format) throws ParseException{
+        List<Attribute> attributes = new ArrayList<>();
+        int numbers = 0, texts = 0;
         Matcher matcher = PATTERN.matcher(format);
         int cursor = 0;
         while(cursor<format.length() && matcher.find(cursor)){
@@ -76,20 +96,32 @@ public class AccessLog{
             if(REQUEST_VARS.contains(group2) || group2.startsWith("request."))
                 messageType = Request.class;
             boolean captureOnFinish = CAPTURE_ON_FINISH.contains(group2);
-            attributes.add(new Attribute(Expression.compile(group2), exchangeType, messageType, captureOnFinish));
+            Attribute attr = new Attribute(Expression.compile(group2), exchangeType, messageType, captureOnFinish);
+            attr.slot = attr.longField==null ? texts++ : numbers++;
+            attributes.add(attr);
 
             cursor = matcher.end();
         }
         String literal = format.substring(cursor, format.length());
         if(!literal.isEmpty())
             attributes.add(new Attribute(literal));
+
+        this.attributes = attributes.toArray(new Attribute[attributes.size()]);
+        this.numbers = numbers;
+        this.texts = texts;
     }
 
     public Reactors.Pool<Record> records = new Reactors.Pool<>(Record::new);
     public class Record implements LogRecord{
         private Class<? extends Exchange> owner;
         private int exchanges = 0;
-        private String values[] = new String[attributes.size()];
+        private final long numberValues[] = new long[numbers];
+        private final Object textValues[] = new Object[texts];
+        private final StringBuilder digits = new StringBuilder(20);
+
+        public Record(){
+            Arrays.fill(numberValues, NONE);
+        }
 
         private LogHandler logHandler;
         public void setLogHandler(LogHandler logHandler){
@@ -100,7 +132,22 @@ public class AccessLog{
             return owner;
         }
 
+        /**
+         * returns captured values, one for each attribute in format.
+         * unlike {@link #publishTo(Appendable)}, this creates strings
+         */
         public String[] getValues(){
+            String values[] = new String[attributes.length];
+            for(int i=0; i<attributes.length; i++){
+                Attribute attr = attributes[i];
+                if(attr.literal!=null)
+                    values[i] = attr.literal;
+                else if(attr.longField!=null){
+                    long value = numberValues[attr.slot];
+                    values[i] = value==NONE ? null : Long.toString(value);
+                }else
+                    values[i] = TypeConversion.toString(textValues[attr.slot]);
+            }
             return values;
         }
 
@@ -109,24 +156,28 @@ public class AccessLog{
                 owner = exchange.getClass();
             if(msg instanceof Request)
                 ++exchanges;
-            for(int i=0; i<values.length; i++){
-                Attribute attr = attributes.get(i);
-                if(!attr.captureOnFinish && attr.isApplicable(exchange, msg))
-                    values[i] = attr.getValue(exchange);
+            for(Attribute attr: attributes){
+                if(attr.literal==null && !attr.captureOnFinish && attr.isApplicable(exchange, msg)){
+                    if(attr.longField!=null)
+                        numberValues[attr.slot] = attr.longField.get(exchange);
+                    else
+                        textValues[attr.slot] = attr.getText(exchange);
+                }
             }
         }
 
         public void finished(Exchange exchange){
             --exchanges;
-            for(int i=0; i<values.length; i++){
-                Attribute attr = attributes.get(i);
+            for(Attribute attr: attributes){
                 if(attr.captureOnFinish && attr.isApplicable(exchange)){
-                    String value = attr.getValue(exchange);
-                    if(value!=null){
-                        if(values[i]!=null)
-                            value = Long.toString(Long.parseLong(values[i]) + Long.parseLong(value));
-                    }
-                    values[i] = value;
+                    if(attr.longField!=null){
+                        long value = attr.longField.get(exchange);
+                        if(value!=NONE){
+                            long old = numberValues[attr.slot];
+                            numberValues[attr.slot] = old==NONE ? value : old+value;
+                        }
+                    }else
+                        textValues[attr.slot] = attr.getText(exchange);
                 }
             }
             if(exchanges==0){
@@ -140,14 +191,45 @@ public class AccessLog{
             owner = null;
             exchanges = 0;
             logHandler = null;
-            Arrays.fill(values, null);
+            Arrays.fill(numberValues, NONE);
+            Arrays.fill(textValues, null);
         }
 
         @Override
         public void publishTo(Appendable writer) throws IOException{
-            for(int i=0; i<values.length; i++){
-                writer.append(values[i]==null ? "-" : values[i]);
-                values[i] = null;
+            for(Attribute attr: attributes){
+                if(attr.literal!=null)
+                    writer.append(attr.literal);
+                else if(attr.longField!=null){
+                    long value = numberValues[attr.slot];
+                    numberValues[attr.slot] = NONE;
+                    if(value==NONE)
+                        writer.append('-');
+                    else if(writer instanceof StringBuilder)
+                        ((StringBuilder)writer).append(value);
+                    else{
+                        digits.setLength(0);
+                        writer.append(digits.append(value));
+                    }
+                }else{
+                    Object value = textValues[attr.slot];
+                    textValues[attr.slot] = null;
+                    if(value==null)
+                        writer.append('-');
+                    else if(value instanceof Status){
+                        Status status = (Status)value;
+                        if(writer instanceof StringBuilder)
+                            ((StringBuilder)writer).append(status.code);
+                        else{
+                            digits.setLength(0);
+                            writer.append(digits.append(status.code));
+                        }
+                        writer.append(' ').append(status.reason);
+                    }else if(value instanceof CharSequence)
+                        writer.append((CharSequence)value);
+                    else
+                        writer.append(value.toString());
+                }
             }
             writer.append(FileUtil.LINE_SEPARATOR);
         }
@@ -155,23 +237,110 @@ public class AccessLog{
 
     /*-------------------------------------------------[ Static Members ]---------------------------------------------------*/
 
+    /** value of numeric attribute that is not available */
+    private static final long NONE = Long.MIN_VALUE;
+
+    private interface LongField{
+        public long get(Exchange exchange);
+    }
+
+    private interface TextField{
+        /** returned value must be immutable, because it is published later */
+        public Object get(Exchange exchange);
+    }
+
+    private static final Map<String, LongField> LONG_FIELDS = new HashMap<>();
+    private static final Map<String, TextField> TEXT_FIELDS = new HashMap<>();
+    static{
+        LONG_FIELDS.put("request_count", Exchange::getRequestCount);
+        LONG_FIELDS.put("port", exchange -> {
+            TCPEndpoint endpoint = exchange.getEndpoint();
+            return endpoint==null ? NONE : endpoint.port;
+        });
+        LONG_FIELDS.put("response.status.code", exchange -> {
+            Response response = exchange.getResponse();
+            return response==null || response.status==null ? NONE : response.status.code;
+        });
+
+        TEXT_FIELDS.put("scheme", exchange -> {
+            TCPEndpoint endpoint = exchange.getEndpoint();
+            return endpoint==null ? null : endpoint.sslContext==null ? "http" : "https";
+        });
+        TEXT_FIELDS.put("host", exchange -> {
+            TCPEndpoint endpoint = exchange.getEndpoint();
+            return endpoint==null ? null : endpoint.host;
+        });
+        TEXT_FIELDS.put("connection_status", Exchange::getConnectionStatus);
+        TEXT_FIELDS.put("request.method", exchange -> {
+            Request request = exchange.getRequest();
+            return request==null || request.method==null ? null : request.method.name;
+        });
+        TEXT_FIELDS.put("request.uri", exchange -> {
+            Request request = exchange.getRequest();
+            return request==null ? null : request.uri;
+        });
+        TEXT_FIELDS.put("request.version", exchange -> {
+            Request request = exchange.getRequest();
+            return request==null ? null : request.version;
+        });
+        TEXT_FIELDS.put("request.content_length", exchange -> contentLength(exchange.getRequest()));
+        TEXT_FIELDS.put("response.status", exchange -> {
+            Response response = exchange.getResponse();
+            return response==null ? null : response.status;
+        });
+        TEXT_FIELDS.put("response.status.reason", exchange -> {
+            Response response = exchange.getResponse();
+            return response==null || response.status==null ? null : response.status.reason;
+        });
+        TEXT_FIELDS.put("response.version", exchange -> {
+            Response response = exchange.getResponse();
+            return response==null ? null : response.version;
+        });
+        TEXT_FIELDS.put("response.content_length", exchange -> contentLength(exchange.getResponse()));
+    }
+
+    /** header value is used as is, instead of parsing and formatting it again */
+    private static Object contentLength(Message message){
+        if(message==null)
+            return null;
+        String value = message.headers.value(Message.CONTENT_LENGTH);
+        return value==null ? "-1" : value;
+    }
+
     private static class Attribute{
         public final Class exchangeType;
         public final Class messageType;
         public final boolean captureOnFinish;
-        private Expression expr;
+        private final Expression expr;
+        private final String literal;
+        private final LongField longField;
+        private final TextField textField;
+        private int slot;
+
         protected Attribute(Expression expr, Class exchangeType, Class messageType, boolean captureOnFinish){
             this.expr = expr;
             this.exchangeType = exchangeType;
             this.messageType = messageType;
             this.captureOnFinish = captureOnFinish;
+            literal = null;
+            String path = expr.toString();
+            longField = LONG_FIELDS.get(path);
+            textField = TEXT_FIELDS.get(path);
         }
 
         protected Attribute(String literal){
-            this(new Literal(literal), null, Request.class, false);
+            expr = new Literal(literal);
+            exchangeType = null;
+            messageType = Request.class;
+            captureOnFinish = false;
+            this.literal = literal;
+            longField = null;
+            textField = null;
         }
 
-        public String getValue(Exchange exchange){
+        public Object getText(Exchange exchange){
+            if(textField!=null)
+                return textField.get(exchange);
             return TypeConversion.toString(expr.evaluate(exchange));
         }
 
@@ -0,0 +1,380 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio.http;
+
+import jlibs.nio.Reactor;
+import jlibs.nio.http.msg.*;
+import jlibs.nio.http.util.Encoding;
+import jlibs.nio.http.util.HTTPDate;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves static files under {@link #root} for requests whose path starts with {@link #prefix}.
+ * Other requests are delegated to {@link #next}.
+ * <p>
+ * Each reactor caches open file channels and file metadata, evicting least recently used
+ * entries beyond {@link #maxOpenFiles}. Cached metadata is trusted for {@link #revalidateInterval}
+ * milliseconds, so conditional requests can be answered with 304 without touching the file.
+ * <p>
+ * Supports single byte-range requests. Payload is sent using {@link FileChannel#transferTo}
+ * when writing directly to socket, and by memory-mapping the file otherwise (ssl, chunked or encoded)
+ * <p>
+ * If {@link #precompressed} is enabled, and file {@code name.gz} exists alongside {@code name} and is
+ * not older than it, then it is sent as is with {@code Content-Encoding: gzip} to clients accepting gzip
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+public class FileServer implements RequestListener{
+    public final String prefix;
+    public final File root;
+    private final Path rootPath;
+
+    public RequestListener next;
+    public int maxOpenFiles = Defaults.MAX_OPEN_FILES;
+    public long revalidateInterval = Defaults.REVALIDATE_INTERVAL;
+    public boolean precompressed = Defaults.PRECOMPRESSED;
+
+    public FileServer(String prefix, File root){
+        this.prefix = prefix;
+        this.root = root;
+        rootPath = root.toPath().toAbsolutePath().normalize();
+    }
+
+    @Override
+    public boolean process(ServerExchange exchange) throws Exception{
+        Request request = exchange.getRequest();
+        String path = request.uri;
+        int query = path.indexOf('?');
+        if(query!=-1)
+            path = path.substring(0, query);
+        if(!path.startsWith(prefix)){
+            if(next==null)
+                throw Status.NOT_FOUND;
+            return next.process(exchange);
+        }
+
+        if(request.method!=Method.GET && request.method!=Method.HEAD){
+            Response response = new Response();
+            response.status = Status.METHOD_NOT_ALLOWED;
+            response.setAllowedMethods(ALLOWED_METHODS);
+            exchange.setResponse(response);
+            return true;
+        }
+
+        CachedFile file = cache().lookup(path);
+        if(file==null)
+            throw Status.NOT_FOUND;
+
+        Response response = new Response();
+        if(file.gzip!=null){
+            response.headers.set(Response.VARY, Request.ACCEPT_ENCODING.toString());
+            if(request.getRange()==null && request.getAcceptEncodings().contains(Encoding.GZIP))
+                file = file.gzip;
+        }
+        response.setETag(file.etag);
+        response.headers.set(Response.LAST_MODIFIED, file.lastModifiedText);
+        response.setAcceptRanges("bytes");
+        exchange.setResponse(response);
+
+        if(notModified(request, file)){
+            response.status = Status.NOT_MODIFIED;
+            return true;
+        }
+
+        long position = 0;
+        long length = file.size;
+        String range = request.getRange();
+        if(range!=null && ifRange(request, file)){
+            long bytes[] = parseRange(range, file.size);
+            if(bytes==UNSATISFIABLE){
+                response.status = Status.REQUESTED_RANGE_NOT_SATISFIABLE;
+                response.setContentRange("bytes */"+file.size);
+                return true;
+            }else if(bytes!=null){
+                position = bytes[0];
+                length = bytes[1]-bytes[0]+1;
+                response.status = Status.PARTIAL_CONTENT;
+                response.setContentRange("bytes "+bytes[0]+'-'+bytes[1]+'/'+file.size);
+            }
+        }
+        response.setPayload(new CachedPayload(file, position, length));
+        return true;
+    }
+
+    private static final List<Method> ALLOWED_METHODS = Arrays.asList(Method.GET, Method.HEAD);
+
+    protected String getContentType(File file){
+        String contentType = URLConnection.getFileNameMap().getContentTypeFor(file.getName());
+        return contentType==null ? "application/octet-stream" : contentType;
+    }
+
+    /*-------------------------------------------------[ Conditional ]---------------------------------------------------*/
+
+    private static boolean notModified(Request request, CachedFile file){
+        String ifNoneMatch = request.getIfNoneMatch();
+        if(ifNoneMatch!=null)
+            return matches(ifNoneMatch, file.etag);
+        String ifModifiedSince = request.headers.value(Request.IF_MODIFIED_SINCE);
+        if(ifModifiedSince!=null){
+            Date date = parseDate(ifModifiedSince);
+            return date!=null && file.lastModified/1000<=date.getTime()/1000;
+        }
+        return false;
+    }
+
+    /** weak comparison of entity tags, as used by If-None-Match */
+    private static boolean matches(String entityTags, String etag){
+        for(String entityTag: entityTags.split(",")){
+            entityTag = entityTag.trim();
+            if(entityTag.startsWith("W/"))
+                entityTag = entityTag.substring(2);
+            if(entityTag.equals("*") || entityTag.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean ifRange(Request request, CachedFile file){
+        String ifRange = request.getIfRange();
+        if(ifRange==null)
+            return true;
+        if(ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return ifRange.equals(file.etag); // strong comparison
+        Date date = parseDate(ifRange);
+        return date!=null && date.getTime()/1000==file.lastModified/1000;
+    }
+
+    private static Date parseDate(String value){
+        try{
+            return HTTPDate.getInstance().parse(value);
+        }catch(RuntimeException ex){
+            return null;
+        }
+    }
+
+    /*-------------------------------------------------[ Range ]---------------------------------------------------*/
+
+    private static final long UNSATISFIABLE[] = {};
+
+    /**
+     * returns first and last byte positions of given range.
+     * returns null if range should be ignored, i.e, it is malformed or has multiple ranges
+     */
+    private static long[] parseRange(String range, long size){
+        if(!range.startsWith("bytes=") || range.indexOf(',')!=-1)
+            return null;
+        int dash = range.indexOf('-');
+        if(dash==-1)
+            return null;
+        String first = range.substring("bytes=".length(), dash).trim();
+        String last = range.substring(dash+1).trim();
+        try{
+            if(first.isEmpty()){
+                if(last.isEmpty())
+                    return null;
+                long suffix = Long.parseLong(last);
+                if(suffix<0)
+                    return null;
+                if(suffix==0 || size==0)
+                    return UNSATISFIABLE;
+                return new long[]{ Math.max(0, size-suffix), size-1 };
+            }
+            long from = Long.parseLong(first);
+            long to = last.isEmpty() ? size-1 : Long.parseLong(last);
+            if(from<0 || to<from)
+                return null;
+            if(from>=size)
+                return UNSATISFIABLE;
+            return new long[]{ from, Math.min(to, size-1) };
+        }catch(NumberFormatException ex){
+            return null;
+        }
+    }
+
+    /*-------------------------------------------------[ Cache ]---------------------------------------------------*/
+
+    private final Map<Reactor, Cache> caches = new ConcurrentHashMap<>();
+
+    private Cache cache(){
+        return caches.computeIfAbsent(Reactor.current(), reactor -> new Cache());
+    }
+
+    /** accessed only by owning reactor */
+    private final class Cache extends LinkedHashMap<String, CachedFile>{
+        Cache(){
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedFile> eldest){
+            if(size()>maxOpenFiles){
+                eldest.getValue().evict();
+                return true;
+            }
+            return false;
+        }
+
+        CachedFile lookup(String path){
+            long now = System.currentTimeMillis();
+            CachedFile file = super.get(path);
+            if(file!=null){
+                if(now-file.validatedAt<revalidateInterval)
+                    return file;
+                if(file.isValid() && (file.gzip==null || file.gzip.isValid())){
+                    file.validatedAt = now;
+                    return file;
+                }
+                remove(path);
+                file.evict();
+            }
+
+            File f = resolve(path);
+            if(f==null || !f.isFile())
+                return null;
+            file = new CachedFile(f, now, null);
+            if(precompressed){
+                File gz = new File(f.getPath()+".gz");
+                if(gz.isFile() && gz.lastModified()>=file.lastModified){
+                    file.gzip = new CachedFile(gz, now, file.contentType);
+                    file.gzip.encodings = Collections.singletonList(Encoding.GZIP);
+                }
+            }
+            put(path, file);
+            return file;
+        }
+    }
+
+    private File resolve(String path){
+        try{
+            path = URLDecoder.decode(path.substring(prefix.length()).replace("+", "%2B"), "UTF-8");
+        }catch(Exception ex){
+            throw Status.BAD_REQUEST.with("Bad URL", ex);
+        }
+        while(path.startsWith("/"))
+            path = path.substring(1);
+        Path resolved;
+        try{
+            resolved = rootPath.resolve(path).normalize();
+        }catch(RuntimeException ex){
+            return null;
+        }
+        return resolved.startsWith(rootPath) ? resolved.toFile() : null;
+    }
+
+    private final class CachedFile{
+        final File file;
+        final long size;
+        final long lastModified;
+        final String lastModifiedText;
+        final String etag;
+        final String contentType;
+        long validatedAt;
+
+        /** precompressed variant of this file */
+        CachedFile gzip;
+        List<Encoding> encodings;
+
+        private FileChannel channel;
+        private int users;
+        private boolean evicted;
+
+        CachedFile(File file, long now, String contentType){
+            this.file = file;
+            lastModified = file.lastModified();
+            size = file.length();
+            lastModifiedText = HTTPDate.getInstance().format(new Date(lastModified));
+            etag = '"'+Long.toHexString(lastModified)+'-'+Long.toHexString(size)+'"';
+            this.contentType = contentType==null ? getContentType(file) : contentType;
+            validatedAt = now;
+        }
+
+        boolean isValid(){
+            return file.lastModified()==lastModified && file.length()==size;
+        }
+
+        FileChannel acquire() throws IOException{
+            if(channel==null)
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            ++users;
+            return channel;
+        }
+
+        void release() throws IOException{
+            --users;
+            if(evicted && users==0)
+                close();
+        }
+
+        void evict(){
+            if(gzip!=null)
+                gzip.evict();
+            evicted = true;
+            if(users==0){
+                try{
+                    close();
+                }catch(IOException ex){
+                    Reactor.current().handleException(ex);
+                }
+            }
+        }
+
+        private void close() throws IOException{
+            if(channel!=null){
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private static final class CachedPayload extends FilePayload{
+        private final CachedFile cachedFile;
+
+        CachedPayload(CachedFile cachedFile, long position, long length){
+            super(cachedFile.contentType, cachedFile.file, position, length, cachedFile.encodings);
+            this.cachedFile = cachedFile;
+        }
+
+        @Override
+        public FileChannel open() throws IOException{
+            return cachedFile.acquire();
+        }
+
+        @Override
+        public void close(FileChannel channel) throws IOException{
+            cachedFile.release();
+        }
+    }
+
+    public static class Defaults{
+        public static int MAX_OPEN_FILES = 1000;
+        public static long REVALIDATE_INTERVAL = 1000L;
+        public static boolean PRECOMPRESSED = true;
+    }
+}
@@ -21,10 +21,14 @@ import jlibs.nio.TCPServer;
 import jlibs.nio.listeners.IOListener;
 import jlibs.nio.log.ConsoleLogHandler;
 import jlibs.nio.log.LogHandler;
+import jlibs.nio.util.ReactorHistogram;
 
 import java.io.IOException;
+import java.net.SocketAddress;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @author Santhosh Kumar Tekuri
@@ -48,6 +52,11 @@ public class HTTPServer implements TCPServer.Listener{
         server.close();
     }
 
+    /** returns address server is listening on, useful when started on port zero */
+    public SocketAddress boundTo(){
+        return server.boundTo();
+    }
+
     @Override
     public void accept(TCPConnection con){
         new IOListener().start(new ServerExchange(this), con);
@@ -61,14 +70,56 @@ public class HTTPServer implements TCPServer.Listener{
     public String serverName = Defaults.SERVER_NAME;
     public boolean supportsProxyConnectionHeader = Defaults.SUPPORTS_PROXY_CONNECTION_HEADER;
 
+    /**
+     * maximum number of responses held back per connection, while head of next
+     * pipelined request is already buffered. held responses are written together
+     * in the order of requests. zero disables batching of pipelined responses
+     */
+    public int maxPipelinedRequests = Defaults.MAX_PIPELINED_REQUESTS;
+
     public AccessLog accessLog;
     public LogHandler logHandler = ConsoleLogHandler.INSTANCE;
 
+    /*-------------------------------------------------[ Metrics ]---------------------------------------------------*/
+
+    // recorded only when Management.COLLECT_METRICS is true, in microseconds
+
+    /** from first byte of request read, till request head is parsed */
+    final ReactorHistogram headTime = new ReactorHistogram();
+
+    /** from request head parsed, till response is ready. includes filters and listener */
+    final ReactorHistogram processTime = new ReactorHistogram();
+
+    /** from response ready, till response is written */
+    final ReactorHistogram writeTime = new ReactorHistogram();
+
+    /** from first byte of request read, till response is written */
+    final ReactorHistogram requestTime = new ReactorHistogram();
+
+    @Override
+    public Map<String, Map<String, Long>> getLatency(){
+        Map<String, Map<String, Long>> map = new LinkedHashMap<>();
+        map.put("head", headTime.toMap());
+        map.put("process", processTime.toMap());
+        map.put("write", writeTime.toMap());
+        map.put("request", requestTime.toMap());
+        return map;
+    }
+
+    @Override
+    public void resetLatency(){
+        headTime.reset();
+        processTime.reset();
+        writeTime.reset();
+        requestTime.reset();
+    }
+
     public static class Defaults{
         public static boolean SET_DATE_HEADER = false;
         public static long MAX_URI_SIZE = 0;
         public static long MAX_REQUEST_HEAD_SIZE = 0;
         public static String SERVER_NAME = null;
         public static boolean SUPPORTS_PROXY_CONNECTION_HEADER = false;
+        public static int MAX_PIPELINED_REQUESTS = 0;
     }
 }
@@ -17,6 +17,7 @@ package jlibs.nio.http;
 
 import jlibs.core.lang.Util;
 import jlibs.nio.Debugger;
+import jlibs.nio.Management;
 import jlibs.nio.Reactor;
 import jlibs.nio.filters.BufferInput;
 import jlibs.nio.filters.ChunkedInput;
@@ -68,6 +69,8 @@ public class ReadMessage extends Task{
                     throw IGNORABLE_EOF_EXCEPTION;
                 throw message.badMessage("Unexpected EOF");
             }
+            if(startedAt==0 && Management.COLLECT_METRICS)
+                startedAt = System.nanoTime();
             buffer.flip();
             int pos = buffer.position();
             parser.consumed = consumed;
@@ -163,6 +166,12 @@ public class ReadMessage extends Task{
     private long consumed = 0;
     private boolean keepAlive;
     private boolean emptyPayload;
+
+    /**
+     * {@link System#nanoTime()} when first bytes of message are read,
+     * zero if metrics are not being collected
+     */
+    long startedAt;
     public void reset(Message message, boolean emptyPayload){
         this.message = message;
         if(buffer==null)
@@ -170,6 +179,7 @@ public class ReadMessage extends Task{
         else
             buffer.clear();
         consumed = 0;
+        startedAt = 0;
         parser.reset(message);
         keepAlive = false;
         this.emptyPayload = emptyPayload;
@@ -17,6 +17,7 @@ package jlibs.nio.http;
 
 import jlibs.core.lang.NotImplementedException;
 import jlibs.nio.*;
+import jlibs.nio.filters.BufferInput;
 import jlibs.nio.filters.InputLimitExceeded;
 import jlibs.nio.filters.ReadTrackingInput;
 import jlibs.nio.filters.TrackingInput;
@@ -25,6 +26,8 @@ import jlibs.nio.http.msg.*;
 import jlibs.nio.http.msg.parser.RequestParser;
 import jlibs.nio.http.util.Expect;
 import jlibs.nio.http.util.USAscii;
+import jlibs.nio.util.BufferAllocator;
+import jlibs.nio.util.Buffers;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -34,14 +37,18 @@ import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
 import static jlibs.nio.Debugger.HTTP;
 import static jlibs.nio.Debugger.println;
 import static jlibs.nio.http.ServerExchange.State.*;
 import static jlibs.nio.http.msg.Message.CONNECTION;
 import static jlibs.nio.http.msg.Message.PROXY_CONNECTION;
 import static jlibs.nio.http.msg.Method.CONNECT;
+import static jlibs.nio.http.util.USAscii.CR;
+import static jlibs.nio.http.util.USAscii.LF;
 
 /**
  * @author Santhosh Kumar Tekuri
@@ -80,6 +87,8 @@ public final class ServerExchange extends Exchange{
             accessLogRecord.setLogHandler(server.logHandler);
         }
         connectionStatus = ConnectionStatus.OPEN;
+        if(server.maxPipelinedRequests>0)
+            pipelined = new Buffers();
     }
 
     enum State{
@@ -96,16 +105,30 @@ public final class ServerExchange extends Exchange{
     private ByteBuffer continue100Buffer;
     protected Iterator<ServerFilter> filters;
 
+    // System.nanoTime() of phase boundaries, zero if metrics are not being collected
+    private long requestStartedAt;
+    private long headReadAt;
+    private long responseReadyAt;
+
     @Override
     protected boolean process(int readyOp) throws IOException{
         if(state==CLOSED)
             return true;
-        if(continue100Buffer!=null){
+        if(flushingPipelined || continue100Buffer!=null){
             try{
-                if(send(continue100Buffer)){
+                if(flushingPipelined){
+                    if(flushPipelined())
+                        flushingPipelined = false;
+                    else
+                        out.addWriteInterest();
+                }
+                if(continue100Buffer!=null && !flushingPipelined && send(continue100Buffer)){
                     continue100Buffer = null;
                     return false;
                 }
+                // woken up only to write held responses, exchange is still suspended
+                if(readyOp==OP_WRITE && state.ordinal()<WRITE_RESPONSE.ordinal())
+                    return false;
             }catch(Throwable thr){
                 setError(thr);
             }
@@ -122,13 +145,13 @@ public final class ServerExchange extends Exchange{
                     case FILTER_REQUEST:
                         while(response==null && filters.hasNext()){
                             if(!filters.next().filter(this, FilterType.REQUEST))
-                                return false;
+                                return suspend();
                         }
                         state = RESPONSE_READY;
                         if(HTTP)
                             println("state = "+state);
                         if(response==null && !user.process(this))
-                            return false;
+                            return suspend();
                     case RESPONSE_READY:
                         filters = responseFilters.iterator();
                         state = FILTER_RESPONSE;
@@ -137,7 +160,7 @@ public final class ServerExchange extends Exchange{
                     case FILTER_RESPONSE:
                         while(filters.hasNext()){
                             if(!filters.next().filter(this, FilterType.RESPONSE))
-                                return false;
+                                return suspend();
                         }
                         state = DELIVER_RESPONSE;
                         if(HTTP)
@@ -145,7 +168,7 @@ public final class ServerExchange extends Exchange{
                     case FILTER_ERROR:
                         while(filters.hasNext()){
                             if(!filters.next().filter(this, FilterType.ERROR))
-                                return false;
+                                return suspend();
                         }
                         state = DELIVER_RESPONSE;
                         if(HTTP)
@@ -166,7 +189,7 @@ public final class ServerExchange extends Exchange{
                         break;
                     case DRAIN_REQUEST:
                         if(!drainInputs())
-                            return false;
+                            return suspend();
                         state = WRITE_RESPONSE;
                         if(HTTP)
                             println("state = "+state);
@@ -194,11 +217,22 @@ public final class ServerExchange extends Exchange{
                             if(header!=null)
                                 response.headers.set(PROXY_CONNECTION, header.getValue());
                         }
-                        if(server.setDateHeader)
-                            response.setDate(false);
+                        HeaderBlock dateBlock = null;
+                        if(server.setDateHeader && response.headers.get(Response.DATE)==null
+                                && (response.headerBlock==null || response.headerBlock.value(Response.DATE)==null))
+                            dateBlock = HeaderBlock.currentDate();
                         if(server.serverName !=null)
                             response.setServer(server.serverName);
-                        writeMessage.reset(response, continue100Buffer, true);
+                        if(headReadAt!=0){
+                            responseReadyAt = System.nanoTime();
+                            server.processTime.record(TimeUnit.NANOSECONDS.toMicros(responseReadyAt-headReadAt));
+                        }
+                        writeMessage.reset(response, continue100Buffer, request.method!=Method.HEAD, dateBlock);
+                        if(pipelined!=null){
+                            boolean defer = keepAlive && pipelined.length<server.maxPipelinedRequests
+                                                      && nextRequestBuffered();
+                            writeMessage.setDeferred(pipelined, defer);
+                        }
                         if(accessLog!=null)
                             accessLogRecord.process(this, response);
                         continue100Buffer = null;
@@ -224,8 +258,10 @@ public final class ServerExchange extends Exchange{
         requestVersion = null;
         requestHasPayload = false;
         continue100Buffer = null;
+        flushingPipelined = false;
         filters = null;
         callback = null;
+        requestStartedAt = headReadAt = responseReadyAt = 0;
         if(accessLog!=null){
             accessLogRecord = accessLog.records.allocate();
             accessLogRecord.setLogHandler(server.logHandler);
@@ -234,6 +270,11 @@ public final class ServerExchange extends Exchange{
 
     @Override
     protected void readMessageFinished(Throwable thr){
+        requestStartedAt = readMessage.startedAt;
+        if(requestStartedAt!=0 && Management.COLLECT_METRICS){
+            headReadAt = System.nanoTime();
+            server.headTime.record(TimeUnit.NANOSECONDS.toMicros(headReadAt-requestStartedAt));
+        }
         if(accessLog!=null){
             try{
                 accessLogRecord.process(this, request);
@@ -303,10 +344,85 @@ public final class ServerExchange extends Exchange{
             println("state = "+state);
     }
 
+    /** responses whose write is deferred, because more pipelined requests are buffered */
+    private Buffers pipelined;
+
+    /**
+     * returns true if head of next pipelined request is already buffered,
+     * so that it can be processed without waiting for client
+     */
+    private boolean nextRequestBuffered(){
+        if(!(in instanceof BufferInput))
+            return false;
+        ByteBuffer buffer = ((BufferInput)in).peek();
+        if(buffer==null)
+            return false;
+        boolean started = false, emptyLine = false;
+        while(buffer.hasRemaining()){
+            byte b = buffer.get();
+            if(b==LF){
+                if(started && emptyLine)
+                    return true;
+                emptyLine = true;
+            }else if(b!=CR){
+                started = true;
+                emptyLine = false;
+            }
+        }
+        return false;
+    }
+
+    /** true while waiting for output to write held responses of a suspended exchange */
+    private boolean flushingPipelined;
+
+    /**
+     * writes as much of held responses as possible.
+     * returns true if nothing is left held
+     */
+    private boolean flushPipelined() throws IOException{
+        if(pipelined!=null){
+            BufferAllocator allocator = Reactor.current().allocator;
+            while(pipelined.length>0 && out.write(pipelined.array, pipelined.offset, pipelined.length)>0)
+                pipelined.removeEmpty(allocator);
+            return pipelined.length==0;
+        }
+        return true;
+    }
+
+    /**
+     * called whenever exchange waits on filter, user or client.
+     * held responses must not wait along with it, so they are
+     * written now, or as soon as output is ready
+     */
+    private boolean suspend() throws IOException{
+        if(!flushPipelined())
+            flushPipelinedLater();
+        return false;
+    }
+
+    private void flushPipelinedLater() throws IOException{
+        flushingPipelined = true;
+        if(out.getOutputListener()==null)
+            out.setOutputListener(listener);
+        out.addWriteInterest();
+    }
+
+    @Override
+    protected void cleanup(Throwable thr){
+        super.cleanup(thr);
+        if(pipelined!=null)
+            Reactor.current().allocator.free(pipelined);
+    }
+
     private void send100Continue(TrackingInput tracker){
         continue100Buffer = CONTINUE_100.duplicate();
         try{
-            if(send(continue100Buffer))
+            // interim response must not overtake held responses of earlier requests.
+            // if they can't be written now, it is sent once they are, or else
+            // prepended to final response
+            if(!flushPipelined())
+                flushPipelinedLater();
+            else if(send(continue100Buffer))
                 continue100Buffer = null;
         }catch(Throwable thr){
             error = thr;
@@ -317,6 +433,11 @@ public final class ServerExchange extends Exchange{
 
     @Override
     protected void writeMessageFinished(Throwable thr){
+        if(responseReadyAt!=0){
+            long now = System.nanoTime();
+            server.writeTime.record(TimeUnit.NANOSECONDS.toMicros(now-responseReadyAt));
+            server.requestTime.record(TimeUnit.NANOSECONDS.toMicros(now-requestStartedAt));
+        }
         error = thr;
         if(error!=null || !keepAlive)
             close();
@@ -424,6 +545,11 @@ public final class ServerExchange extends Exchange{
     public Connection stealConnection(){
         if(HTTP)
             println("stealConnection()");
+        try{
+            flushPipelined();
+        }catch(IOException ex){
+            Reactor.current().handleException(ex);
+        }
         Connection con = (Connection)in.channel();
         in = null;
         out = null;
@@ -15,9 +15,11 @@
 
 package jlibs.nio.http;
 
+import jlibs.nio.Reactor;
 import jlibs.nio.http.msg.FilePayload;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 import static jlibs.nio.http.WriteFilePayload.State.SETUP;
 import static jlibs.nio.http.WriteFilePayload.State.TRANSFER_FILE;
@@ -34,6 +36,7 @@ public class WriteFilePayload extends WritePayload{
 
     enum State{ SETUP, TRANSFER_FILE }
     private State state = SETUP;
+    private FileChannel channel;
 
     @Override
     protected boolean process(int readyOp) throws IOException{
@@ -41,11 +44,24 @@ public class WriteFilePayload extends WritePayload{
             switch(state){
                 case SETUP:
                     setup();
-                    prepareTransferFromFile(filePayload.file);
+                    channel = filePayload.open();
+                    prepareTransferFromFile(channel, filePayload.position, filePayload.getContentLength());
                     state = TRANSFER_FILE;
                 case TRANSFER_FILE:
                     return transferFromFile();
             }
         }
     }
+
+    @Override
+    protected void cleanup(Throwable thr){
+        if(channel!=null){
+            try{
+                filePayload.close(channel);
+            }catch(Throwable ex){
+                Reactor.current().handleException(ex);
+            }
+            channel = null;
+        }
+    }
 }
@@ -19,9 +19,12 @@ import jlibs.core.lang.NotImplementedException;
 import jlibs.nio.Reactor;
 import jlibs.nio.Writable;
 import jlibs.nio.http.msg.*;
+import jlibs.nio.http.util.Compression;
 import jlibs.nio.http.util.Encoding;
 import jlibs.nio.listeners.Task;
+import jlibs.nio.util.BufferAllocator;
 import jlibs.nio.util.Buffers;
+import jlibs.nio.util.UnpooledBufferAllocator;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -61,7 +64,7 @@ public final class WriteMessage extends Task{
                     return true;
                 case WRITE_BUFFER:
                     if(write(buffer)){
-                        if(header==null){
+                        if(header==null && block==null){
                             state = PREPARE_BUFFERS;
                             break;
                         }else{
@@ -112,6 +115,23 @@ public final class WriteMessage extends Task{
                         index = 0;
                         header = header.next();
                     }
+                    while(block!=null){
+                        do{
+                            index = block.putInto(buffer, index);
+                            if(buffer.remaining()<2){
+                                buffer.flip();
+                                if(write(buffer))
+                                    buffer.clear();
+                                else{
+                                    state = WRITE_BUFFER;
+                                    return false;
+                                }
+                            }
+                        }while(index!=block.length());
+                        index = 0;
+                        block = nextBlock;
+                        nextBlock = null;
+                    }
                     buffer.put(CR);
                     buffer.put(LF);
                     buffer.flip();
@@ -122,9 +142,16 @@ public final class WriteMessage extends Task{
                         break;
                     }
                 case PREPARE_BUFFERS:
+                    if(buffers!=null && buffer.hasRemaining())
+                        coalesce();
                     if(buffers==null){
                         if(buffer.hasRemaining()){
-                            state = WRITE_BUFFER;
+                            if(defer && writePayload==null){
+                                deferred.append(buffer);
+                                buffer = null;
+                                state = CLOSE_OUTPUTS;
+                            }else
+                                state = WRITE_BUFFER;
                             break;
                         }else{
                             state = WRITE_PAYLOAD;
@@ -132,19 +159,23 @@ public final class WriteMessage extends Task{
                         }
                     }else{
                         if(buffer.hasRemaining()){
-                            ByteBuffer array[] = new ByteBuffer[1+buffers.length];
-                            array[0] = buffer;
-                            System.arraycopy(buffers.array, buffers.offset, array, 1, buffers.length);
-                            buffers = new Buffers(array, 0, array.length);
-                            prepareFlush(buffers, !retain);
-                            if(!retain)
+                            if(retain){
+                                ByteBuffer array[] = new ByteBuffer[1+buffers.length];
+                                array[0] = buffer;
+                                for(int i=0; i<buffers.length; i++)
+                                    array[1+i] = buffers.array[buffers.offset+i].duplicate();
+                                prepareFlush(new Buffers(array, 0, array.length), UnpooledBufferAllocator.HEAP);
+                            }else{
+                                buffers.prepend(buffer);
+                                prepareFlush(buffers, true);
                                 buffer = null;
+                            }
                         }else
                             prepareFlush(buffers, !retain);
                         state = WRITE_BUFFERS;
                     }
                 case WRITE_BUFFERS:
-                    if(!flushBuffers())
+                    if(!writeDeferred() || !flushBuffers())
                         return false;
                     state = WRITE_PAYLOAD;
                 case WRITE_PAYLOAD:
@@ -167,8 +198,51 @@ public final class WriteMessage extends Task{
         }
     }
 
+    @Override
+    protected boolean write(ByteBuffer buffer) throws IOException{
+        return writeDeferred() && super.write(buffer);
+    }
+
+    @Override
+    protected boolean send(ByteBuffer buffer) throws IOException{
+        return writeDeferred() && super.send(buffer);
+    }
+
+    private Buffers deferred;
+    private boolean defer;
+
+    /**
+     * Used to batch responses of pipelined requests.
+     * <p>
+     * {@code deferred} contains messages that are not yet written, which are
+     * written before this message. If {@code defer} is true and this message
+     * fits in a single buffer, it is appended to {@code deferred} rather than
+     * being written.
+     * <p>
+     * must be called after {@link #reset(Message, ByteBuffer, boolean)}
+     */
+    public void setDeferred(Buffers deferred, boolean defer){
+        this.deferred = deferred;
+        this.defer = defer;
+    }
+
+    private boolean writeDeferred() throws IOException{
+        if(deferred!=null){
+            BufferAllocator allocator = Reactor.current().allocator;
+            while(deferred.length>0){
+                if(out.write(deferred.array, deferred.offset, deferred.length)==0){
+                    out.addWriteInterest();
+                    return false;
+                }
+                deferred.removeEmpty(allocator);
+            }
+        }
+        return true;
+    }
+
     private ByteBuffer buffer;
     private Header header;
+    private HeaderBlock block, nextBlock;
     private boolean writeName;
     private int index;
     private boolean retain;
@@ -176,6 +250,14 @@ public final class WriteMessage extends Task{
     private boolean sendPayload;
     private WritePayload writePayload;
     public void reset(Message message, ByteBuffer continue100Buffer, boolean sendPayload){
+        reset(message, continue100Buffer, sendPayload, null);
+    }
+
+    /**
+     * {@code extraBlock} if not null, is written after headers of message.
+     * it is not added to message, so message should not have headers in it
+     */
+    public void reset(Message message, ByteBuffer continue100Buffer, boolean sendPayload, HeaderBlock extraBlock){
         if(buffer==null)
             buffer = Reactor.current().allocator.allocate();
         else
@@ -183,10 +265,14 @@ public final class WriteMessage extends Task{
         this.sendPayload = sendPayload;
         writeName = true;
         index = 0;
+        if(buffers!=null && !retain) // payload of previous message was not sent
+            Reactor.current().allocator.free(buffers);
         retain = false;
         buffers = null;
         writePayload = null;
         error = null;
+        deferred = null;
+        defer = false;
 
         Payload payload = message.getPayload();
         message.headers.set(Message.CONTENT_TYPE, payload.contentType);
@@ -211,13 +297,30 @@ public final class WriteMessage extends Task{
         }else if(payload instanceof EncodablePayload){
             EncodablePayload encodablePayload = (EncodablePayload)payload;
             buffers = new Buffers();
-            OutputStream os = buffers;
             try{
                 List<Encoding> encodings = message.getContentEncodings();
-                while(!encodings.isEmpty())
-                    os = encodings.remove(encodings.size()-1).wrap(os);
-                encodablePayload.writeTo(os);
-                os.close();
+                Compression compression = Compression.get(payload.contentType);
+                if(encodings.isEmpty() || Compression.MIN_SIZE<=0){
+                    OutputStream os = wrap(buffers, encodings, compression);
+                    encodablePayload.writeTo(os);
+                    os.close();
+                }else{
+                    // encode only if payload is large enough to benefit
+                    Buffers raw = buffers;
+                    encodablePayload.writeTo(raw);
+                    if(raw.remaining()<Compression.MIN_SIZE)
+                        message.setContentEncodings(null);
+                    else{
+                        buffers = new Buffers();
+                        OutputStream os = wrap(buffers, encodings, compression);
+                        try{
+                            raw.writeTo(os);
+                            os.close();
+                        }finally{
+                            Reactor.current().allocator.free(raw);
+                        }
+                    }
+                }
             }catch(IOException ex){
                 throw Status.INTERNAL_SERVER_ERROR.with(ex);
             }
@@ -237,6 +340,10 @@ public final class WriteMessage extends Task{
                     }
                 }else{
                     writePayload.encodings = message.getContentEncodings();
+                    if(contentLength!=-1 && contentLength<Compression.MIN_SIZE && !writePayload.encodings.isEmpty()){
+                        message.setContentEncodings(null);
+                        writePayload.encodings.clear();
+                    }
                     if(writePayload.encodings.isEmpty()){
                         if(contentLength!=-1){
                             buffers = socketPayload.buffers;
@@ -263,15 +370,26 @@ public final class WriteMessage extends Task{
         }else if(payload instanceof FilePayload){
             FilePayload filePayload = (FilePayload)payload;
             writePayload = new WriteFilePayload(filePayload);
-            writePayload.encodings = message.getContentEncodings();
-            if(writePayload.encodings.isEmpty())
+            if(filePayload.encodings!=null && !filePayload.encodings.isEmpty()){
+                message.setContentEncodings(filePayload.encodings);
                 message.setContentLength(filePayload.getContentLength());
-            else{
-                writePayload.chunked = true;
-                message.setChunked();
+            }else{
+                writePayload.encodings = message.getContentEncodings();
+                if(filePayload.getContentLength()<Compression.MIN_SIZE && !writePayload.encodings.isEmpty()){
+                    message.setContentEncodings(null);
+                    writePayload.encodings.clear();
+                }
+                if(writePayload.encodings.isEmpty())
+                    message.setContentLength(filePayload.getContentLength());
+                else{
+                    writePayload.chunked = true;
+                    message.setChunked();
+                }
             }
         }else
             throw new NotImplementedException("write"+payload.getClass().getSimpleName());
+        if(writePayload!=null && writePayload.encodings!=null && !writePayload.encodings.isEmpty())
+            writePayload.compression = Compression.get(payload.contentType);
 
         if(HTTP){
             println("writeMessage{");
@@ -279,11 +397,19 @@ public final class WriteMessage extends Task{
             println("}");
         }
 
+        block = message.headerBlock;
+        nextBlock = extraBlock;
+        if(block==null){
+            block = nextBlock;
+            nextBlock = null;
+        }else
+            block.removeFrom(message.headers);
+
         if(continue100Buffer!=null)
             buffer.put(continue100Buffer);
         message.putLineInto(buffer);
         header = message.headers.getFirst();
-        if(header==null){
+        if(header==null && block==null){
             buffer.put(CR);
             buffer.put(LF);
             buffer.flip();
@@ -292,6 +418,41 @@ public final class WriteMessage extends Task{
             state = WRITE_HEAD;
     }
 
+    private static OutputStream wrap(OutputStream out, List<Encoding> encodings, Compression compression) throws IOException{
+        while(!encodings.isEmpty())
+            out = encodings.remove(encodings.size()-1).wrap(out, compression);
+        return out;
+    }
+
+    /**
+     * copies payload buffers into free space of head buffer,
+     * so that small messages are written in single write call.
+     * does nothing if payload doesn't fit, leaving {@code buffers} as is.
+     * when not retained, copied buffers are removed from {@code buffers} and freed
+     */
+    private void coalesce(){
+        if(buffers.remaining()>buffer.capacity()-buffer.limit())
+            return;
+        int position = buffer.position();
+        buffer.position(buffer.limit());
+        buffer.limit(buffer.capacity());
+        BufferAllocator allocator = Reactor.current().allocator;
+        if(retain){
+            for(int i=0; i<buffers.length; i++)
+                buffer.put(buffers.array[buffers.offset+i].duplicate());
+        }else{
+            // buffers may be shared with payload, so remove before freeing
+            while(buffers.length>0){
+                ByteBuffer payload = buffers.remove();
+                buffer.put(payload);
+                allocator.free(payload);
+            }
+        }
+        buffer.limit(buffer.position());
+        buffer.position(position);
+        buffers = null;
+    }
+
     private Throwable error;
     @Override
     protected int childTaskFinished(Task childTask, Throwable thr){
@@ -16,6 +16,7 @@
 package jlibs.nio.http;
 
 import jlibs.nio.filters.ChunkedOutput;
+import jlibs.nio.http.util.Compression;
 import jlibs.nio.http.util.Encoding;
 import jlibs.nio.listeners.Task;
 
@@ -35,13 +36,14 @@ public abstract class WritePayload extends Task{
 
     boolean chunked;
     List<Encoding> encodings;
+    Compression compression = Compression.DEFAULT;
 
     protected final void setup(){
         if(chunked)
             out = new ChunkedOutput(out);
         if(encodings!=null){
             for(int i=encodings.size()-1; i>=0; --i)
-                out = encodings.get(i).wrap(out);
+                out = encodings.get(i).wrap(out, compression);
         }
         if(HTTP)
             println("out = "+out);
@@ -110,9 +110,9 @@ public class AsciiString{
     }
 
     private int internID;
-    private static final Headers INTERNED = new Headers();
+    private static AsciiString interned[];
     protected static void initInterned(){
-        if(INTERNED.getFirst()!=null)
+        if(interned!=null)
             return;
         TreeMap<String, AsciiString> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
         try{
@@ -121,7 +121,6 @@ public class AsciiString{
                 for(Field field: clazz.getFields()){
                     if(field.getType()==AsciiString.class){
                         AsciiString string = (AsciiString)field.get(null);
-                        INTERNED.add(string, "");
                         map.put(string.text, string);
                     }
                 }
@@ -130,16 +129,71 @@ public class AsciiString{
             throw new ImpossibleException(ex);
         }
 
+        // open addressing with linear probing, at most quarter full
+        AsciiString table[] = new AsciiString[Integer.highestOneBit(map.size()*4-1)<<1];
         int id = 0;
-        for(AsciiString string: map.values())
+        for(AsciiString string: map.values()){
             string.internID = ++id;
+            int idx = string.hashCode & (table.length-1);
+            while(table[idx]!=null)
+                idx = (idx+1) & (table.length-1);
+            table[idx] = string;
+        }
+        interned = table;
     }
 
     public static AsciiString valueOf(CharSequence seq){
         int hashCode = USAscii.caseInsensitiveHashCode(seq);
-        Header header = INTERNED.entry(seq, hashCode, false);
-        if(header!=null)
-            return header.getName();
+        AsciiString table[] = interned;
+        if(table!=null){
+            int idx = hashCode & (table.length-1);
+            AsciiString string;
+            while((string=table[idx])!=null){
+                if(string.hashCode==hashCode && string.equals(seq))
+                    return string;
+                idx = (idx+1) & (table.length-1);
+            }
+        }
         return new AsciiString(seq, hashCode);
     }
+
+    /**
+     * returns AsciiString for {@code length} bytes of buffer starting at {@code offset}.
+     * {@code hashCode} must be computed as in {@link USAscii#caseInsensitiveHashCode(CharSequence)}.
+     * interned strings are matched without creating String
+     */
+    public static AsciiString valueOf(ByteBuffer buffer, int offset, int length, int hashCode){
+        AsciiString table[] = interned;
+        if(table!=null){
+            int idx = hashCode & (table.length-1);
+            AsciiString string;
+            while((string=table[idx])!=null){
+                if(string.hashCode==hashCode && string.equals(buffer, offset, length))
+                    return string;
+                idx = (idx+1) & (table.length-1);
+            }
+        }
+        char chars[] = new char[length];
+        for(int i=0; i<length; i++)
+            chars[i] = (char)(buffer.get(offset+i)&0xFF);
+        return new AsciiString(new String(chars), hashCode);
+    }
+
+    private boolean equals(ByteBuffer buffer, int offset, int length){
+        if(bytes.length!=length)
+            return false;
+        for(int i=0; i<length; i++){
+            int ch1 = bytes[i];
+            if(ch1>='a' && ch1<='z')
+                ch1 = ch1 & 0xDF;
+
+            int ch2 = buffer.get(offset+i);
+            if(ch2>='a' && ch2<='z')
+                ch2 = ch2 & 0xDF;
+
+            if(ch1!=ch2)
+                return false;
+        }
+        return true;
+    }
 }
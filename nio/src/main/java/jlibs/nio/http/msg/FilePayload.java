@@ -15,20 +15,63 @@
 
 package jlibs.nio.http.msg;
 
+import jlibs.nio.http.util.Encoding;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 
 /**
  * @author Santhosh Kumar Tekuri
  */
 public class FilePayload extends Payload{
     public final File file;
+    public final long position;
+    private final long length;
+
+    /**
+     * encodings already applied to file content, for example
+     * a precompressed file. these are sent as Content-Encoding
+     * without encoding the content again
+     */
+    public final List<Encoding> encodings;
+
     public FilePayload(String contentType, File file){
+        this(contentType, file, 0, -1);
+    }
+
+    /**
+     * payload is {@code length} bytes of file starting from {@code position}.
+     * length {@code -1} means till end of file
+     */
+    public FilePayload(String contentType, File file, long position, long length){
+        this(contentType, file, position, length, null);
+    }
+
+    public FilePayload(String contentType, File file, long position, long length, List<Encoding> encodings){
         super(contentType);
         this.file = file;
+        this.position = position;
+        this.length = length;
+        this.encodings = encodings;
     }
 
     @Override
     public long getContentLength(){
-        return file.length();
+        return length==-1 ? file.length()-position : length;
+    }
+
+    /**
+     * opens channel to read file content.
+     * once payload is written, the channel is released using {@link #close(FileChannel)}
+     */
+    public FileChannel open() throws IOException{
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    public void close(FileChannel channel) throws IOException{
+        channel.close();
     }
 }
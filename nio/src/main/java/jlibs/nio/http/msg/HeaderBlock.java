@@ -0,0 +1,147 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio.http.msg;
+
+import jlibs.nio.http.util.HTTPDate;
+
+import java.nio.ByteBuffer;
+
+import static jlibs.nio.http.util.USAscii.*;
+
+/**
+ * Immutable set of headers, encoded once.
+ * <p>
+ * Useful when same headers such as {@code Server}, {@code Cache-Control}
+ * are sent with many messages. Assign it to {@link Message#headerBlock},
+ * and its bytes are copied as is, after {@link Message#headers}.
+ * Headers with same names are removed from {@link Message#headers}, when
+ * message is written.
+ * <p>
+ * can be shared across reactors
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+public final class HeaderBlock{
+    private final AsciiString names[];
+    private final String values[];
+    private final byte bytes[];
+
+    public HeaderBlock(Headers headers){
+        int count = 0;
+        for(Header header=headers.getFirst(); header!=null; header=header.next())
+            ++count;
+        names = new AsciiString[count];
+        values = new String[count];
+        int i = 0;
+        for(Header header=headers.getFirst(); header!=null; header=header.next()){
+            names[i] = header.getName();
+            values[i] = header.getValue();
+            ++i;
+        }
+        bytes = encode(names, values);
+    }
+
+    private HeaderBlock(AsciiString name, String value){
+        names = new AsciiString[]{ name };
+        values = new String[]{ value };
+        bytes = encode(names, values);
+    }
+
+    private static byte[] encode(AsciiString names[], String values[]){
+        int length = 0;
+        for(int i=0; i<names.length; i++)
+            length += names[i].text.length()+2+values[i].length()+2;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for(int i=0; i<names.length; i++){
+            names[i].putInto(buffer);
+            buffer.put(COLON);
+            buffer.put(SP);
+            String value = values[i];
+            for(int j=0; j<value.length(); j++)
+                buffer.put((byte)value.charAt(j));
+            buffer.put(CR);
+            buffer.put(LF);
+        }
+        return buffer.array();
+    }
+
+    public int size(){
+        return names.length;
+    }
+
+    public AsciiString getName(int i){
+        return names[i];
+    }
+
+    public String getValue(int i){
+        return values[i];
+    }
+
+    public String value(AsciiString name){
+        for(int i=0; i<names.length; i++){
+            if(names[i].equals(name))
+                return values[i];
+        }
+        return null;
+    }
+
+    /** number of bytes, when encoded */
+    public int length(){
+        return bytes.length;
+    }
+
+    public ByteBuffer getBytes(){
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    public int putInto(ByteBuffer buffer, int offset){
+        int min = Math.min(bytes.length-offset, buffer.remaining());
+        if(min>0)
+            buffer.put(bytes, offset, min);
+        return offset + min;
+    }
+
+    /** removes headers that are in this block */
+    public void removeFrom(Headers headers){
+        for(AsciiString name: names)
+            headers.remove(name);
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder builder = new StringBuilder();
+        for(int i=0; i<names.length; i++)
+            builder.append(names[i]).append(": ").append(values[i]).append("\r\n");
+        return builder.toString();
+    }
+
+    /*-------------------------------------------------[ Date ]---------------------------------------------------*/
+
+    private static final ThreadLocal<HeaderBlock[]> DATE = ThreadLocal.withInitial(() -> new HeaderBlock[1]);
+
+    /**
+     * returns block with {@code Date} header set to current time.
+     * it is cached per thread (i.e per reactor) and refreshed once per second
+     */
+    public static HeaderBlock currentDate(){
+        HeaderBlock cache[] = DATE.get();
+        String date = HTTPDate.getInstance().currentDate();
+        HeaderBlock block = cache[0];
+        if(block==null || block.values[0]!=date)
+            cache[0] = block = new HeaderBlock(Response.DATE, date);
+        return block;
+    }
+}
@@ -38,6 +38,9 @@ public abstract class Message implements Bean{
     public final Headers headers = new Headers();
     public Headers trailers;
 
+    /** pre-encoded headers, written after {@link #headers} */
+    public HeaderBlock headerBlock;
+
     public abstract void putLineInto(ByteBuffer buffer);
 
     public abstract Status badMessageStatus();
@@ -347,6 +347,45 @@ public class Request extends Message{
         headers.setSingleValue(IF_UNMODIFIED_SINCE, date, HTTPDate.getInstance()::format);
     }
 
+    /*-------------------------------------------------[ If-None-Match ]---------------------------------------------------*/
+
+    // http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.26
+    public static final AsciiString IF_NONE_MATCH = new AsciiString("If-None-Match");
+
+    public String getIfNoneMatch(){
+        return headers.value(IF_NONE_MATCH);
+    }
+
+    public void setIfNoneMatch(String entityTags){
+        headers.set(IF_NONE_MATCH, entityTags);
+    }
+
+    /*-------------------------------------------------[ If-Range ]---------------------------------------------------*/
+
+    // http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.27
+    public static final AsciiString IF_RANGE = new AsciiString("If-Range");
+
+    public String getIfRange(){
+        return headers.value(IF_RANGE);
+    }
+
+    public void setIfRange(String value){
+        headers.set(IF_RANGE, value);
+    }
+
+    /*-------------------------------------------------[ Range ]---------------------------------------------------*/
+
+    // http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.35
+    public static final AsciiString RANGE = new AsciiString("Range");
+
+    public String getRange(){
+        return headers.value(RANGE);
+    }
+
+    public void setRange(String range){
+        headers.set(RANGE, range);
+    }
+
     /*-------------------------------------------------[ SOAPAction ]---------------------------------------------------*/
 
     // http://www.w3.org/TR/2000/NOTE-SOAP-20000508/#_Toc478383528
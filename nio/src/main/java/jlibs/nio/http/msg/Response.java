@@ -122,11 +122,50 @@ public class Response extends Message{
     public static final AsciiString LAST_MODIFIED = new AsciiString("Last-Modified");
 
     public Date getLastModified(){
-        return headers.getSingleValue(EXPIRES, HTTPDate.getInstance()::parse);
+        return headers.getSingleValue(LAST_MODIFIED, HTTPDate.getInstance()::parse);
     }
 
     public void setLastModified(Date date){
-        headers.setSingleValue(EXPIRES, date, HTTPDate.getInstance()::format);
+        headers.setSingleValue(LAST_MODIFIED, date, HTTPDate.getInstance()::format);
+    }
+
+    /*-------------------------------------------------[ ETag ]---------------------------------------------------*/
+
+    // http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.19
+    public static final AsciiString ETAG = new AsciiString("ETag");
+
+    public String getETag(){
+        return headers.value(ETAG);
+    }
+
+    public void setETag(String entityTag){
+        headers.set(ETAG, entityTag);
+    }
+
+    /*-------------------------------------------------[ Accept-Ranges ]---------------------------------------------------*/
+
+    // http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.5
+    public static final AsciiString ACCEPT_RANGES = new AsciiString("Accept-Ranges");
+
+    public String getAcceptRanges(){
+        return headers.value(ACCEPT_RANGES);
+    }
+
+    public void setAcceptRanges(String rangeUnit){
+        headers.set(ACCEPT_RANGES, rangeUnit);
+    }
+
+    /*-------------------------------------------------[ Content-Range ]---------------------------------------------------*/
+
+    // http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.16
+    public static final AsciiString CONTENT_RANGE = new AsciiString("Content-Range");
+
+    public String getContentRange(){
+        return headers.value(CONTENT_RANGE);
+    }
+
+    public void setContentRange(String contentRange){
+        headers.set(CONTENT_RANGE, contentRange);
     }
 
     /*-------------------------------------------------[ WWW-Authenticate ]---------------------------------------------------*/
@@ -232,6 +271,11 @@ public class Response extends Message{
         headers.setListValue(ALLOW, methods, null, true);
     }
 
+    /*-------------------------------------------------[ Vary ]---------------------------------------------------*/
+
+    // http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.44
+    public static final AsciiString VARY = new AsciiString("Vary");
+
     /*-------------------------------------------------[ Access-Control-Allow-Origin ]---------------------------------------------------*/
 
     // http://www.w3.org/TR/cors/#http-access-control-allow-origin
@@ -22,10 +22,19 @@ import jlibs.nio.http.msg.AsciiString;
 import jlibs.nio.util.Parser;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static jlibs.nio.http.util.USAscii.*;
 
 /**
+ * Parses header lines.
+ * <p>
+ * when a header line is available completely in buffer, it is parsed
+ * without copying into {@link #builder}: header name is resolved by its
+ * hash against interned names, and end of line is searched eight bytes
+ * at a time. lines split across buffers are parsed char by char.
+ *
  * @author Santhosh Kumar Tekuri
  */
 public class HeadersParser implements Parser{
@@ -38,6 +47,7 @@ public class HeadersParser implements Parser{
 
     private int state = LINE_BEGIN;
     private AsciiString name;
+    private String value;
 
     @Override
     public boolean parse(ByteBuffer buffer, boolean eof){
@@ -68,7 +78,11 @@ public class HeadersParser implements Parser{
 
                     if(name!=null){
                         if(WS[ch]){
-                            builder.append(SP);
+                            if(value!=null){
+                                builder.append(value);
+                                value = null;
+                            }
+                            builder.append((char)SP);
                             state = VALUE;
                             if(buffer.hasRemaining())
                                 break;
@@ -77,22 +91,24 @@ public class HeadersParser implements Parser{
                         }else
                             addHeader();
                     }
-                    builder.append(ch);
+                    buffer.position(buffer.position()-1);
                     state = NAME;
-                    if(!buffer.hasRemaining())
-                        return false;
                 case NAME:
-                    while(buffer.hasRemaining()){
-                        ch = (char)buffer.get();
-                        if(ch==COLON){
-                            name = AsciiString.valueOf(builder);
-                            builder.setLength(0);
-                            state = VALUE_BEGIN;
-                            break;
-                        }else{
-                            if(!TOKEN[ch])
-                                throw errorStatus.with("Bad Header Name");
-                            builder.append(ch);
+                    if(builder.length()==0 && parseName(buffer))
+                        state = VALUE_BEGIN;
+                    else{
+                        while(buffer.hasRemaining()){
+                            ch = (char)buffer.get();
+                            if(ch==COLON){
+                                name = AsciiString.valueOf(builder);
+                                builder.setLength(0);
+                                state = VALUE_BEGIN;
+                                break;
+                            }else{
+                                if(ch>=TOKEN.length || !TOKEN[ch])
+                                    throw errorStatus.with("Bad Header Name");
+                                builder.append(ch);
+                            }
                         }
                     }
                     if(!buffer.hasRemaining())
@@ -108,8 +124,12 @@ public class HeadersParser implements Parser{
                     if(!buffer.hasRemaining())
                         return false;
                 case VALUE:
+                    if(builder.length()==0 && parseValue(buffer)){
+                        state = LINE_BEGIN;
+                        break;
+                    }
                     while(buffer.hasRemaining()){
-                        ch = (char)buffer.get();
+                        ch = (char)(buffer.get()&0xFF);
                         if(ch==CR){
                             if(buffer.hasRemaining()){
                                 if(buffer.get()!=LF)
@@ -133,17 +153,121 @@ public class HeadersParser implements Parser{
         return false;
     }
 
+    /**
+     * parses header name till colon, if it is available completely in buffer.
+     * returns false without consuming anything otherwise
+     */
+    private boolean parseName(ByteBuffer buffer){
+        int hash = 17;
+        int offset = buffer.position();
+        int limit = buffer.limit();
+        for(int i=offset; i<limit; i++){
+            int ch = buffer.get(i);
+            if(ch==COLON){
+                name = AsciiString.valueOf(buffer, offset, i-offset, hash);
+                buffer.position(i+1);
+                return true;
+            }
+            if(ch<0 || !TOKEN[ch])
+                throw errorStatus.with("Bad Header Name");
+            if(ch>='a' && ch<='z')
+                ch = ch & 0xDF;
+            hash = (hash<<4) + hash + ch;
+        }
+        return false;
+    }
+
+    /**
+     * parses header value till end of line, if it is available completely in buffer.
+     * returns false without consuming anything otherwise
+     */
+    private boolean parseValue(ByteBuffer buffer){
+        int offset = buffer.position();
+        int limit = buffer.limit();
+        int eol = indexOfEOL(buffer, offset, limit);
+        if(eol==-1)
+            return false;
+        int next = eol+1;
+        if(buffer.get(eol)==CR){
+            if(next==limit)
+                return false;
+            if(buffer.get(next)!=LF)
+                throw errorStatus.with("Bad EOL");
+            ++next;
+        }
+        // trailing whitespace is trimmed in addHeader(), as next line may be continuation
+        value = toString(buffer, offset, eol);
+        buffer.position(next);
+        return true;
+    }
+
+    private static final long CRs = 0x0D0D0D0D0D0D0D0DL;
+    private static final long LFs = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+    /**
+     * returns index of first CR or LF in buffer within given range, or -1 if not found.
+     * reads eight bytes at a time and tests them all at once (SWAR)
+     */
+    private static int indexOfEOL(ByteBuffer buffer, int from, int to){
+        boolean bigEndian = buffer.order()==ByteOrder.BIG_ENDIAN;
+        while(to-from>=8){
+            long word = buffer.getLong(from);
+            long found = zeroBytes(word^CRs) | zeroBytes(word^LFs);
+            if(found!=0)
+                return from + ((bigEndian ? Long.numberOfLeadingZeros(found) : Long.numberOfTrailingZeros(found))>>>3);
+            from += 8;
+        }
+        for(; from<to; from++){
+            byte b = buffer.get(from);
+            if(b==CR || b==LF)
+                return from;
+        }
+        return -1;
+    }
+
+    /** returns word with high bit set in each byte that is zero, and other bits cleared */
+    private static long zeroBytes(long word){
+        return ~(((word&LOW7)+LOW7) | word | LOW7);
+    }
+
+    private byte bytes[];
+    private String toString(ByteBuffer buffer, int from, int to){
+        int len = to-from;
+        if(buffer.hasArray())
+            return new String(buffer.array(), buffer.arrayOffset()+from, len, ISO_8859_1);
+        if(bytes==null || bytes.length<len)
+            bytes = new byte[Math.max(len, 256)];
+        for(int i=0; i<len; i++)
+            bytes[i] = buffer.get(from+i);
+        return new String(bytes, 0, len, ISO_8859_1);
+    }
+
     private void addHeader(){
-        int end = builder.length();
-        while(end>0 && WS[builder.charAt(end-1)])
-            --end;
         if(headers==null)
             headers = message.trailers = new Headers();
-        headers.add(name, builder.substring(0, end));
+        if(value!=null){
+            int end = trimmedLength(value);
+            headers.add(name, end==value.length() ? value : value.substring(0, end));
+            value = null;
+        }else
+            headers.add(name, builder.substring(0, trimmedLength(builder)));
         name = null;
         builder.setLength(0);
     }
 
+    /** returns length of given value, excluding trailing whitespace */
+    private static int trimmedLength(CharSequence value){
+        int end = value.length();
+        while(end>0){
+            char ch = value.charAt(end-1);
+            if(ch!=SP && ch!=HT)
+                break;
+            --end;
+        }
+        return end;
+    }
+
     private Status errorStatus;
     private Headers headers;
     private Message message;
@@ -152,6 +276,7 @@ public class HeadersParser implements Parser{
         this.errorStatus = errorStatus;
         builder.setLength(0);
         name = null;
+        value = null;
         state = LINE_BEGIN;
     }
 
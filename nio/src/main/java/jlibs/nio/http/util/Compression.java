@@ -0,0 +1,83 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio.http.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+/**
+ * Deflater settings used when payload is encoded with {@link Encoding#GZIP} or {@link Encoding#DEFLATE}.
+ * <p>
+ * settings can be registered per media type, for example fast compression for
+ * {@code application/json} and {@link Deflater#HUFFMAN_ONLY} for {@code image/*}
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+public final class Compression{
+    public final int level;
+    public final int strategy;
+
+    public Compression(int level, int strategy){
+        this.level = level;
+        this.strategy = strategy;
+    }
+
+    @Override
+    public String toString(){
+        return "Compression[level="+level+", strategy="+strategy+']';
+    }
+
+    public static Compression DEFAULT = new Compression(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+
+    /**
+     * payloads whose length is known and smaller than this, are sent without encoding.
+     * {@code 0} means always encode
+     */
+    public static long MIN_SIZE = Defaults.MIN_SIZE;
+
+    private static final Map<String, Compression> MEDIA_TYPES = new ConcurrentHashMap<>();
+
+    /**
+     * mediaType is either {@code type/subtype} or {@code type/*}.
+     * null compression removes the registration
+     */
+    public static void register(String mediaType, Compression compression){
+        mediaType = mediaType.toLowerCase();
+        if(compression==null)
+            MEDIA_TYPES.remove(mediaType);
+        else
+            MEDIA_TYPES.put(mediaType, compression);
+    }
+
+    public static Compression get(String contentType){
+        if(contentType==null || MEDIA_TYPES.isEmpty())
+            return DEFAULT;
+        int semicolon = contentType.indexOf(';');
+        String mediaType = (semicolon==-1 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase();
+        Compression compression = MEDIA_TYPES.get(mediaType);
+        if(compression==null){
+            int slash = mediaType.indexOf('/');
+            if(slash!=-1)
+                compression = MEDIA_TYPES.get(mediaType.substring(0, slash+1)+'*');
+        }
+        return compression==null ? DEFAULT : compression;
+    }
+
+    public static class Defaults{
+        public static long MIN_SIZE = 1024;
+    }
+}
@@ -18,6 +18,7 @@ package jlibs.nio.http.util;
 import jlibs.core.lang.NotImplementedException;
 import jlibs.nio.Input;
 import jlibs.nio.Output;
+import jlibs.nio.ZipPool;
 import jlibs.nio.filters.DeflaterOutput;
 import jlibs.nio.filters.GZIPInput;
 import jlibs.nio.filters.GZIPOutput;
@@ -27,7 +28,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Objects;
 import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -70,6 +74,33 @@ public class Encoding{
         return osFunction.apply(os);
     }
 
+    /**
+     * same as {@link #wrap(Output)}, but {@link #GZIP} and {@link #DEFLATE}
+     * use pooled deflater with given compression settings
+     */
+    public Output wrap(Output out, Compression compression){
+        if(this==GZIP)
+            return new GZIPOutput(out, compression.level, compression.strategy);
+        else if(this==DEFLATE)
+            return new DeflaterOutput(out, compression.level, compression.strategy);
+        else
+            return wrap(out);
+    }
+
+    /**
+     * same as {@link #wrap(OutputStream)}, but {@link #GZIP} and {@link #DEFLATE}
+     * use pooled deflater with given compression settings, which is returned to
+     * pool on close
+     */
+    public OutputStream wrap(OutputStream os, Compression compression) throws IOException{
+        if(this==GZIP)
+            return new PooledGZIPOutputStream(os, ZipPool.allocateDeflater(compression.level, compression.strategy, true));
+        else if(this==DEFLATE)
+            return new PooledDeflaterOutputStream(os, ZipPool.allocateDeflater(compression.level, compression.strategy, false));
+        else
+            return wrap(os);
+    }
+
     @Override
     public int hashCode(){
         return name.hashCode();
@@ -93,4 +124,65 @@ public class Encoding{
         else
             return new Encoding(encoding, null, null, null);
     }
+
+    private static class PooledDeflaterOutputStream extends DeflaterOutputStream{
+        private long nanos;
+
+        PooledDeflaterOutputStream(OutputStream out, Deflater deflater){
+            super(out, deflater, 8192);
+        }
+
+        @Override
+        protected void deflate() throws IOException{
+            long begin = System.nanoTime();
+            super.deflate();
+            nanos += System.nanoTime()-begin;
+        }
+
+        @Override
+        public void close() throws IOException{
+            if(def!=null){
+                try{
+                    super.close();
+                }finally{
+                    ZipPool.free(def, nanos);
+                    def = null;
+                }
+            }
+        }
+    }
+
+    private static class PooledGZIPOutputStream extends PooledDeflaterOutputStream{
+        private static final byte HEADER[] = {
+            (byte)GZIPInputStream.GZIP_MAGIC, (byte)(GZIPInputStream.GZIP_MAGIC>>8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+        };
+        private final CRC32 crc = new CRC32();
+
+        PooledGZIPOutputStream(OutputStream out, Deflater deflater) throws IOException{
+            super(out, deflater);
+            out.write(HEADER);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException{
+            super.write(bytes, offset, length);
+            crc.update(bytes, offset, length);
+        }
+
+        @Override
+        public void finish() throws IOException{
+            if(!def.finished()){
+                super.finish();
+                writeInt((int)crc.getValue());
+                writeInt(def.getTotalIn());
+            }
+        }
+
+        private void writeInt(int i) throws IOException{
+            out.write(i & 0xFF);
+            out.write((i>>8) & 0xFF);
+            out.write((i>>16) & 0xFF);
+            out.write((i>>24) & 0xFF);
+        }
+    }
 }
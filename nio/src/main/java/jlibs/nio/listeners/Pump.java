@@ -19,6 +19,7 @@ import jlibs.nio.Connection;
 import jlibs.nio.Reactor;
 
 import java.io.IOException;
+import java.util.function.Consumer;
 
 import static java.nio.channels.SelectionKey.OP_READ;
 
@@ -53,8 +54,63 @@ public class Pump extends Task{
         new IOListener().start(new Pump(), con);
     }
 
-    public static void startTunnel(Connection con1, Connection con2){
-        new IOListener().start(new Pump(), con1.in(), con2.out());
-        new IOListener().start(new Pump(), con2.in(), con1.out());
+    public static Tunnel startTunnel(Connection con1, Connection con2){
+        return startTunnel(con1, con2, null);
+    }
+
+    /**
+     * pumps data in both directions between given connections.
+     * {@code listener} if not null, is notified on reactor thread
+     * when tunnel is finished
+     */
+    public static Tunnel startTunnel(Connection con1, Connection con2, Consumer<Tunnel> listener){
+        Tunnel tunnel = new Tunnel(listener);
+        new IOListener().start(tunnel.forward, con1.in(), con2.out());
+        new IOListener().start(tunnel.backward, con2.in(), con1.out());
+        return tunnel;
+    }
+
+    /**
+     * Pair of pumps forwarding data between two connections.
+     * <p>
+     * pumps hold a buffer only while data is in flight, so idle
+     * tunnels don't occupy buffers from reactor's allocator.
+     * tunnel is finished when either direction is finished,
+     * because both connections are closed by then
+     */
+    public static class Tunnel{
+        private final Consumer<Tunnel> listener;
+        private final Pump forward = new TunnelPump();
+        private final Pump backward = new TunnelPump();
+        private boolean active = true;
+
+        private Tunnel(Consumer<Tunnel> listener){
+            this.listener = listener;
+        }
+
+        /** bytes pumped from first connection to second connection */
+        public long getForwardBytes(){
+            return forward.pumped;
+        }
+
+        /** bytes pumped from second connection to first connection */
+        public long getBackwardBytes(){
+            return backward.pumped;
+        }
+
+        public boolean isActive(){
+            return active;
+        }
+
+        private class TunnelPump extends Pump{
+            @Override
+            protected void cleanup(Throwable thr){
+                if(active){
+                    active = false;
+                    if(Tunnel.this.listener!=null)
+                        Tunnel.this.listener.accept(Tunnel.this);
+                }
+            }
+        }
     }
 }
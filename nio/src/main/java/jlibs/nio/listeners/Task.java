@@ -160,10 +160,28 @@ public abstract class Task{
     private FileChannel fileChannel;
     private long fileOffset;
     private long fileLength;
+    private boolean closeFile;
+    private ByteBuffer mappedFile;
     protected void prepareTransferFromFile(File file) throws IOException{
-        fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
-        fileOffset = 0;
-        fileLength = fileChannel.size();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try{
+            prepareTransferFromFile(channel, 0, channel.size());
+        }catch(Throwable thr){
+            channel.close();
+            throw thr;
+        }
+        closeFile = true;
+    }
+
+    /**
+     * prepares to transfer {@code count} bytes of given channel starting at {@code position}.
+     * the channel is not closed after transfer
+     */
+    protected void prepareTransferFromFile(FileChannel channel, long position, long count){
+        fileChannel = channel;
+        fileOffset = position;
+        fileLength = count;
+        closeFile = false;
         if(out instanceof ChunkedOutput)
             ((ChunkedOutput)out).startChunk(fileLength);
     }
@@ -171,7 +189,7 @@ public abstract class Task{
     protected boolean transferFromFile() throws IOException{
         try{
             while(fileLength>0){
-                long wrote = out.transferFrom(fileChannel, fileOffset, fileLength);
+                long wrote = out instanceof Socket ? out.transferFrom(fileChannel, fileOffset, fileLength) : writeMappedFile();
                 if(wrote==0){
                     out.addWriteInterest();
                     return false;
@@ -188,8 +206,23 @@ public abstract class Task{
         return true;
     }
 
+    private static final long MAP_SIZE = 4*1024*1024;
+
+    /**
+     * FileChannel.transferTo can send directly to socket only. for other
+     * outputs (ssl, chunked, encoded) it copies through temporary buffer.
+     * so instead file is memory-mapped in chunks and written
+     */
+    private long writeMappedFile() throws IOException{
+        if(mappedFile==null || !mappedFile.hasRemaining())
+            mappedFile = fileChannel.map(FileChannel.MapMode.READ_ONLY, fileOffset, Math.min(fileLength, MAP_SIZE));
+        return out.write(mappedFile);
+    }
+
     private void transferFromFileDone() throws IOException{
-        fileChannel.close();
+        mappedFile = null;
+        if(closeFile)
+            fileChannel.close();
         fileChannel = null;
     }
 
@@ -459,6 +492,10 @@ public abstract class Task{
     /*-------------------------------------------------[ pumping ]---------------------------------------------------*/
 
     private boolean flushNeeded;
+
+    /** number of bytes written to output by doPump */
+    protected long pumped;
+
     protected void preparePump(Buffers backup){
         buffers = backup;
         buffer = allocator.allocate();
@@ -478,11 +515,20 @@ public abstract class Task{
                 flushNeeded = false;
                 readyOp = OP_READ;
             }
+            if(buffer==null){
+                buffer = allocator.allocate();
+                readyOp = OP_READ;
+            }
             while(true){
                 if(readyOp==OP_READ){
                     int read = in.read(buffer);
                     if(read==0){
                         in.addReadInterest();
+                        if(buffers==null){
+                            // don't hold buffer while waiting for input, idle tunnels can be many
+                            allocator.free(buffer);
+                            buffer = null;
+                        }
                         if(flushNeeded){
                             flushing = true;
                             if(!out.flush()){
@@ -508,10 +554,12 @@ public abstract class Task{
 
                 if(buffer.hasRemaining()){
                     do{
-                        if(out.write(buffer)==0){
+                        int wrote = out.write(buffer);
+                        if(wrote==0){
                             out.addWriteInterest();
                             return false;
                         }
+                        pumped += wrote;
                     }while(buffer.hasRemaining());
                     flushNeeded = true;
 
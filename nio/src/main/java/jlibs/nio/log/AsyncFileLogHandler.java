@@ -0,0 +1,289 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio.log;
+
+import jlibs.nio.util.RepeatingDuration;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * {@link FileLogHandler} that writes from a background thread.
+ * <p>
+ * Reactor threads only append record into a preallocated slot
+ * of a lock-free ring buffer. Writer thread encodes slots in batches
+ * into a reusable direct buffer, and writes it to file when it is
+ * {@link #flushSize} full, or {@link #flushInterval} has elapsed.
+ * <p>
+ * When ring buffer is full, records are either dropped or publisher
+ * waits for a free slot, depending on {@link #overflow}
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+public class AsyncFileLogHandler implements LogHandler, Closeable{
+    public enum Overflow{ DROP, BLOCK }
+
+    private final File dir;
+    private final String prefix;
+    private final String suffix;
+    private final String format;
+    private final RepeatingDuration repeatingDuration;
+
+    public volatile Overflow overflow = Defaults.OVERFLOW;
+    public volatile int flushSize = Defaults.FLUSH_SIZE;
+    public volatile long flushInterval = Defaults.FLUSH_INTERVAL;
+
+    private final Slot slots[];
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private volatile long written;
+
+    public AsyncFileLogHandler(File dir, String prefix, String suffix, String format){
+        this(dir, prefix, suffix, format, Defaults.RING_SIZE);
+    }
+
+    public AsyncFileLogHandler(File dir, String prefix, String suffix, String format, int ringSize){
+        if(ringSize<=0 || (ringSize&(ringSize-1))!=0)
+            throw new IllegalArgumentException("ringSize must be power of 2: "+ringSize);
+        this.dir = dir;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.format = format;
+        repeatingDuration = RepeatingDuration.forFormat(format);
+
+        slots = new Slot[ringSize];
+        for(int i=0; i<ringSize; i++)
+            slots[i] = new Slot(i-ringSize);
+        mask = ringSize-1;
+
+        writer = new Thread(this::run, "AsyncFileLogHandler:"+prefix);
+        writer.setDaemon(true);
+        writer.start();
+        shutdownHook = new Thread(this::close);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    private static final class Slot{
+        final StringBuilder record = new StringBuilder(256);
+
+        /** sequence of record in this slot, once it is published */
+        volatile long sequence;
+
+        Slot(long sequence){
+            this.sequence = sequence;
+        }
+    }
+
+    public long getPublished(){ return published.sum(); }
+    public long getWritten(){ return written; }
+    public long getDropped(){ return dropped.sum(); }
+    public long getBlocked(){ return blocked.sum(); }
+    public long getPending(){ return tail.get()-head; }
+
+    @Override
+    public void publish(LogRecord record){
+        if(closed){
+            dropped.increment();
+            return;
+        }
+        long sequence;
+        boolean waited = false;
+        while(true){
+            sequence = tail.get();
+            if(sequence-head>=slots.length){
+                if(closed || overflow==Overflow.DROP){
+                    dropped.increment();
+                    return;
+                }
+                if(!waited){
+                    waited = true;
+                    blocked.increment();
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }else if(tail.compareAndSet(sequence, sequence+1))
+                break;
+        }
+
+        Slot slot = slots[(int)sequence&mask];
+        slot.record.setLength(0);
+        try{
+            record.publishTo(slot.record);
+        }catch(IOException ex){
+            ex.printStackTrace(); // StringBuilder never throws IOException
+        }
+        slot.sequence = sequence;
+        published.increment();
+        if(sleeping)
+            LockSupport.unpark(writer);
+    }
+
+    /*-------------------------------------------------[ Writer ]---------------------------------------------------*/
+
+    private FileChannel channel;
+    private long nextRotation;
+    private ByteBuffer buffer;
+
+    private void run(){
+        buffer = ByteBuffer.allocateDirect(Math.max(flushSize, 1024)+8);
+        long lastFlush = System.currentTimeMillis();
+        long sequence = head;
+        while(true){
+            Slot slot = slots[(int)sequence&mask];
+            if(slot.sequence==sequence){
+                encode(slot.record);
+                head = ++sequence;
+                if(buffer.position()>=flushSize){
+                    flush();
+                    lastFlush = System.currentTimeMillis();
+                }
+                continue;
+            }
+
+            long now = System.currentTimeMillis();
+            long wait = lastFlush+flushInterval-now;
+            if(buffer.position()>0 && wait<=0){
+                flush();
+                lastFlush = now;
+                wait = flushInterval;
+            }
+            if(closed && tail.get()==sequence){
+                flush();
+                closeChannel();
+                return;
+            }
+            sleeping = true;
+            if(slot.sequence!=sequence && !closed)
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(buffer.position()>0 ? Math.max(wait, 1) : flushInterval));
+            sleeping = false;
+        }
+    }
+
+    private void encode(CharSequence record){
+        for(int i=0, len=record.length(); i<len; i++){
+            if(buffer.remaining()<4)
+                flush();
+            char ch = record.charAt(i);
+            if(ch<0x80)
+                buffer.put((byte)ch);
+            else if(ch<0x800){
+                buffer.put((byte)(0xC0|(ch>>6)));
+                buffer.put((byte)(0x80|(ch&0x3F)));
+            }else if(Character.isHighSurrogate(ch) && i+1<len && Character.isLowSurrogate(record.charAt(i+1))){
+                int cp = Character.toCodePoint(ch, record.charAt(++i));
+                buffer.put((byte)(0xF0|(cp>>18)));
+                buffer.put((byte)(0x80|((cp>>12)&0x3F)));
+                buffer.put((byte)(0x80|((cp>>6)&0x3F)));
+                buffer.put((byte)(0x80|(cp&0x3F)));
+            }else if(Character.isSurrogate(ch))
+                buffer.put((byte)'?');
+            else{
+                buffer.put((byte)(0xE0|(ch>>12)));
+                buffer.put((byte)(0x80|((ch>>6)&0x3F)));
+                buffer.put((byte)(0x80|(ch&0x3F)));
+            }
+        }
+        ++written;
+    }
+
+    private void flush(){
+        if(buffer.position()==0)
+            return;
+        buffer.flip();
+        try{
+            rotateIfNecessary();
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+        }catch(Throwable ex){
+            ex.printStackTrace();
+            closeChannel();
+        }
+        buffer.clear();
+    }
+
+    private void rotateIfNecessary() throws IOException{
+        long now = System.currentTimeMillis();
+        if(channel==null || now>=nextRotation){
+            closeChannel();
+            File file = new File(dir, prefix+new SimpleDateFormat(format).format(new Date(now))+suffix);
+            channel = FileChannel.open(file.toPath(), CREATE, WRITE, APPEND);
+            nextRotation = repeatingDuration==null ? Long.MAX_VALUE : repeatingDuration.next();
+        }
+    }
+
+    private void closeChannel(){
+        if(channel!=null){
+            try{
+                channel.close();
+            }catch(IOException ex){
+                ex.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * writes pending records and stops writer thread.
+     * records published after this are dropped
+     */
+    @Override
+    public void close(){
+        if(!closed){
+            closed = true;
+            try{
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            }catch(IllegalStateException ignore){
+                // jvm is shutting down, possibly running this from shutdownHook
+            }
+            LockSupport.unpark(writer);
+            try{
+                writer.join();
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /*-------------------------------------------------[ Options ]---------------------------------------------------*/
+
+    public static class Defaults{
+        public static int RING_SIZE = 8*1024;
+        public static int FLUSH_SIZE = 64*1024;
+        public static long FLUSH_INTERVAL = 1000;
+        public static Overflow OVERFLOW = Overflow.DROP;
+    }
+}
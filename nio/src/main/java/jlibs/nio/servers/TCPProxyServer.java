@@ -19,6 +19,7 @@ import jlibs.nio.*;
 import jlibs.nio.listeners.Pump;
 
 import java.io.IOException;
+import java.util.function.Consumer;
 
 /**
  * @author Santhosh Kumar Tekuri
@@ -31,6 +32,9 @@ public class TCPProxyServer implements TCPServer.Listener{
         this.remoteEndpoint = remoteEndpoint;
     }
 
+    /** if not null, notified with byte counts when a tunnel is finished */
+    public Consumer<Pump.Tunnel> tunnelListener;
+
     private TCPServer server;
     public void start() throws IOException{
         server = localEndpoint.startServer(this);
@@ -45,7 +49,7 @@ public class TCPProxyServer implements TCPServer.Listener{
         remoteEndpoint.newConnection(result -> {
             try{
                 Connection con2 = result.get();
-                Pump.startTunnel(con1, con2);
+                Pump.startTunnel(con1, con2, tunnelListener);
             }catch(Throwable thr){
                 Reactor.current().handleException(thr);
                 con1.close();
@@ -36,6 +36,10 @@ public interface BufferAllocator{
     public default ByteBuffer allocateDirect(){
         return allocateDirect(CHUNK_SIZE);
     }
+    /**
+     * returns buffer whose remaining is size.
+     * note that its capacity can be larger than size
+     */
     public default ByteBuffer allocate(int size){
         return directPreferred() ? allocateDirect(size) : allocateHeap(size);
     }
@@ -61,5 +65,20 @@ public interface BufferAllocator{
         public static int CHUNK_SIZE = 16*1024;
         public static boolean USE_DIRECT_BUFFERS = true;
         public static boolean POOL_BUFFERS = true;
+
+        /** size of direct memory arena used by {@link PooledBufferAllocator} */
+        public static int ARENA_SIZE = 1024*1024;
+
+        /** max bytes retained in pool by each {@link PooledBufferAllocator} */
+        public static long MAX_POOLED_PER_REACTOR = 64L*1024*1024;
+
+        /** max bytes retained in pool by all {@link PooledBufferAllocator}s */
+        public static long MAX_POOLED = 256L*1024*1024;
+
+        /**
+         * one in every LEAK_DETECTION_SAMPLING allocations from {@link PooledBufferAllocator}
+         * is tracked for leaks. zero disables leak detection
+         */
+        public static int LEAK_DETECTION_SAMPLING = 0;
     }
 }
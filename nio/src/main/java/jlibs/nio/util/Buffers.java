@@ -46,7 +46,7 @@ public final class Buffers extends OutputStream{
     public void append(ByteBuffer buffer){
         if(offset+length>=array.length){
             if(offset!=0)
-                System.arraycopy(array, offset, array, 0, length-1);
+                System.arraycopy(array, offset, array, 0, length);
             else
                 array = Arrays.copyOf(array, 2*array.length);
             offset = 0;
@@ -64,6 +64,17 @@ public final class Buffers extends OutputStream{
         length += buffers.length;
     }
 
+    public void prepend(ByteBuffer buffer){
+        if(offset==0){
+            ByteBuffer dest[] = length<array.length ? array : new ByteBuffer[2*array.length+1];
+            System.arraycopy(array, 0, dest, 1, length);
+            array = dest;
+            offset = 1;
+        }
+        array[--offset] = buffer;
+        ++length;
+    }
+
     public ByteBuffer remove(){
         if(length==0)
             throw new NoSuchElementException();
@@ -0,0 +1,141 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of non-negative values.
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is split
+ * into 8 sub-buckets, so percentiles are accurate to within 12.5%.
+ * Recording is lock-free and doesn't allocate.
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+public class Histogram{
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1<<SUB_BITS;
+    private static final int BUCKETS = (64-SUB_BITS+1)*SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    static int index(long value){
+        if(value<SUB_COUNT)
+            return (int)value;
+        int exp = 63-Long.numberOfLeadingZeros(value);
+        int sub = (int)(value>>>(exp-SUB_BITS)) & (SUB_COUNT-1);
+        return (exp-SUB_BITS+1)*SUB_COUNT + sub;
+    }
+
+    /** returns smallest value counted in given bucket */
+    static long lowerBound(int index){
+        if(index<SUB_COUNT)
+            return index;
+        int exp = index/SUB_COUNT + SUB_BITS-1;
+        long sub = index%SUB_COUNT;
+        return (1L<<exp) | (sub<<(exp-SUB_BITS));
+    }
+
+    public void record(long value){
+        if(value<0)
+            value = 0;
+        buckets.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount(){
+        return count.sum();
+    }
+
+    public long getMax(){
+        return max.get();
+    }
+
+    public double getMean(){
+        long count = this.count.sum();
+        return count==0 ? 0 : (double)sum.sum()/count;
+    }
+
+    /**
+     * returns value below which given percentage of recorded
+     * values fall. percentile is in range [0, 100]
+     */
+    public long getPercentile(double percentile){
+        long total = 0;
+        for(int i=0; i<BUCKETS; i++)
+            total += buckets.get(i);
+        if(total==0)
+            return 0;
+        long rank = (long)Math.ceil(total*percentile/100);
+        if(rank<1)
+            rank = 1;
+        long seen = 0;
+        for(int i=0; i<BUCKETS; i++){
+            seen += buckets.get(i);
+            if(seen>=rank)
+                return Math.min(i+1<BUCKETS ? lowerBound(i+1)-1 : Long.MAX_VALUE, max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * adds values recorded by given histogram to this histogram.
+     * used to merge per-thread histograms on read
+     */
+    public void add(Histogram histogram){
+        for(int i=0; i<BUCKETS; i++){
+            long bucket = histogram.buckets.get(i);
+            if(bucket!=0)
+                buckets.addAndGet(i, bucket);
+        }
+        count.add(histogram.count.sum());
+        sum.add(histogram.sum.sum());
+        max.accumulate(histogram.max.get());
+    }
+
+    public void reset(){
+        for(int i=0; i<BUCKETS; i++)
+            buckets.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * summary suitable to expose on JMX
+     */
+    public Map<String, Long> toMap(){
+        Map<String, Long> map = new LinkedHashMap<>();
+        map.put("count", getCount());
+        map.put("mean", Math.round(getMean()));
+        map.put("p50", getPercentile(50));
+        map.put("p90", getPercentile(90));
+        map.put("p99", getPercentile(99));
+        map.put("p999", getPercentile(99.9));
+        map.put("max", getMax());
+        return map;
+    }
+}
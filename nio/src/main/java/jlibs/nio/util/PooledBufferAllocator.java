@@ -14,42 +14,80 @@
  */
 
 package jlibs.nio.util;
+import jlibs.nio.Reactor;
 
-import jlibs.core.util.LongTreeMap;
-
-import java.lang.ref.SoftReference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static jlibs.nio.Debugger.DEBUG;
 import static jlibs.nio.Debugger.println;
+import static jlibs.nio.util.BufferAllocator.Defaults.*;
 
 /**
+ * Slab style allocator with power-of-two size classes.
+ * <p>
+ * Requested size is rounded up to its size class. The buffer returned has
+ * {@code limit} set to the requested size, but its capacity is that of the size class.
+ * Direct buffers are carved out of large direct memory arenas of {@link Defaults#ARENA_SIZE}.
+ * Requests larger than arena size are not pooled.
+ * <p>
+ * Freed buffers are retained only while the bytes retained by this allocator is within
+ * {@link Defaults#MAX_POOLED_PER_REACTOR} and the bytes retained by all allocators is within
+ * {@link Defaults#MAX_POOLED}. Otherwise they are dropped and left to GC.
+ * <p>
+ * When leak detection is enabled, one in every {@link #getLeakDetectionSampling()} allocations
+ * is tracked along with its allocation site. Following are reported to reactor's exception handler:
+ * <ul>
+ *     <li>tracked buffer garbage collected without being freed</li>
+ *     <li>tracked buffer freed twice</li>
+ *     <li>tracked buffer modified while in pool. the limit of such buffer is set to zero,
+ *         so that any access after free fails fast</li>
+ * </ul>
+ * <p>
+ * This class is not thread-safe. Each reactor has its own instance.
+ *
  * @author Santhosh Kumar Tekuri
  */
 public class PooledBufferAllocator implements BufferAllocator{
-    private boolean directPreferred;
+    private static final int MIN_SHIFT = 6;
+    private static final AtomicLong GLOBAL_RETAINED = new AtomicLong();
+
+    private final boolean directPreferred;
+    private final int arenaSize;
+    private final long maxRetained;
+    private final long maxGlobalRetained;
+
+    private final Buffers heap[];
+    private final Buffers direct[];
+    private ByteBuffer arena;
+
     public PooledBufferAllocator(boolean directPreferred){
-        this.directPreferred = directPreferred;
+        this(directPreferred, ARENA_SIZE, MAX_POOLED_PER_REACTOR, MAX_POOLED);
     }
 
-    @SuppressWarnings("unchecked")
-    private LongTreeMap<SoftReference<Buffers>> map[] = new LongTreeMap[]{ new LongTreeMap<>(), new LongTreeMap<>() };
+    public PooledBufferAllocator(boolean directPreferred, int arenaSize, long maxRetained, long maxGlobalRetained){
+        this.directPreferred = directPreferred;
+        this.arenaSize = arenaSize = sizeOf(classOf(Math.max(arenaSize, 1<<MIN_SHIFT)));
+        this.maxRetained = maxRetained;
+        this.maxGlobalRetained = maxGlobalRetained;
 
-    private Buffers get(LongTreeMap<SoftReference<Buffers>> map, int size, boolean create){
-        LongTreeMap.Entry<SoftReference<Buffers>> entry = map.getEntry(size);
-        Buffers bytes = null;
-        if(entry!=null){
-            bytes = entry.value.get();
-            if(bytes==null){
-                if(create)
-                    entry.value = new SoftReference<>(bytes=new Buffers());
-                else
-                    map.deleteEntry(entry);
-            }
-        }else if(create)
-            map.put(size, new SoftReference<>(bytes=new Buffers()));
+        int classes = classOf(arenaSize)+1;
+        heap = new Buffers[classes];
+        direct = new Buffers[classes];
+        for(int i=0; i<classes; i++){
+            heap[i] = new Buffers();
+            direct[i] = new Buffers();
+        }
+    }
+
+    private static int classOf(int size){
+        return size<=(1<<MIN_SHIFT) ? 0 : 32-Integer.numberOfLeadingZeros(size-1)-MIN_SHIFT;
+    }
 
-        return bytes;
+    private static int sizeOf(int sizeClass){
+        return 1<<(sizeClass+MIN_SHIFT);
     }
 
     @Override
@@ -59,29 +97,304 @@ public class PooledBufferAllocator implements BufferAllocator{
 
     @Override
     public ByteBuffer allocateHeap(int size){
-        Buffers buffers = get(map[0], size, false);
-        if(buffers==null || buffers.length==0){
+        ++allocated;
+        if(size>arenaSize){
+            ++misses;
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            if(tracking())
+                allocated(buffer);
+            return buffer;
+        }
+        int sizeClass = classOf(size);
+        ByteBuffer buffer = remove(heap[sizeClass]);
+        if(buffer==null){
             if(DEBUG)
                 println("pool.allocate("+size+")");
-            return ByteBuffer.allocate(size);
-        }else{
-            return buffers.removeLast();
+            ++misses;
+            buffer = ByteBuffer.allocate(sizeOf(sizeClass));
         }
+        if(tracking())
+            allocated(buffer);
+        buffer.limit(size);
+        return buffer;
     }
 
     @Override
     public ByteBuffer allocateDirect(int size){
-        Buffers buffers = get(map[1], size, false);
-        if(buffers==null || buffers.length==0){
+        ++allocated;
+        if(size>arenaSize){
+            ++misses;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+            if(tracking())
+                allocated(buffer);
+            return buffer;
+        }
+        int sizeClass = classOf(size);
+        ByteBuffer buffer = remove(direct[sizeClass]);
+        if(buffer==null){
             if(DEBUG)
                 println("pool.allocateDirect("+size+")");
-            return ByteBuffer.allocateDirect(size);
-        }else
-            return buffers.removeLast();
+            ++misses;
+            buffer = carve(sizeOf(sizeClass));
+        }
+        if(tracking())
+            allocated(buffer);
+        buffer.limit(size);
+        return buffer;
+    }
+
+    private ByteBuffer remove(Buffers buffers){
+        if(buffers.length==0)
+            return null;
+        ByteBuffer buffer = buffers.removeLast();
+        retained -= buffer.capacity();
+        GLOBAL_RETAINED.addAndGet(-buffer.capacity());
+        ++hits;
+        return buffer;
+    }
+
+    private ByteBuffer carve(int capacity){
+        if(arena==null || arena.remaining()<capacity){
+            if(arena!=null){
+                // pool the remainder of current arena
+                while(arena.hasRemaining()){
+                    int sizeClass = classOf(arena.remaining()+1)-1;
+                    ByteBuffer buffer = slice(sizeOf(sizeClass));
+                    if(!retain(direct[sizeClass], buffer))
+                        break;
+                }
+            }
+            arena = ByteBuffer.allocateDirect(arenaSize);
+            ++arenas;
+        }
+        return slice(capacity);
     }
 
+    private ByteBuffer slice(int capacity){
+        arena.limit(arena.position()+capacity);
+        ByteBuffer buffer = arena.slice();
+        arena.position(arena.limit());
+        arena.limit(arena.capacity());
+        return buffer;
+    }
+
+    @Override
     public void free(ByteBuffer buffer){
+        Tracker tracker = null;
+        if(trackerCount>0){
+            tracker = tracker(buffer);
+            if(tracker!=null){
+                if(tracker.freedAt!=null){
+                    ++doubleFrees;
+                    report("ByteBuffer freed twice", tracker.freedAt);
+                    return;
+                }
+                tracker.freedAt = new Throwable("freed at", tracker.allocatedAt);
+            }
+        }
+        ++freed;
         buffer.clear();
-        get(map[buffer.isDirect() ? 1 : 0], buffer.capacity(), true).append(buffer);
+        int capacity = buffer.capacity();
+        if(capacity<(1<<MIN_SHIFT) || capacity>arenaSize || (capacity&(capacity-1))!=0
+                || buffer.isReadOnly() || (buffer.hasArray() && buffer.arrayOffset()!=0)){
+            // not allocated by us
+            ++dropped;
+            if(tracker!=null)
+                untrack(tracker);
+            return;
+        }
+        Buffers buffers = (buffer.isDirect() ? direct : heap)[classOf(capacity)];
+        if(retain(buffers, buffer)){
+            if(tracker!=null)
+                buffer.limit(0);
+        }else{
+            ++dropped;
+            if(tracker!=null)
+                untrack(tracker);
+        }
+    }
+
+    private boolean retain(Buffers buffers, ByteBuffer buffer){
+        int capacity = buffer.capacity();
+        if(retained+capacity>maxRetained)
+            return false;
+        if(GLOBAL_RETAINED.addAndGet(capacity)>maxGlobalRetained){
+            GLOBAL_RETAINED.addAndGet(-capacity);
+            return false;
+        }
+        retained += capacity;
+        buffers.append(buffer);
+        return true;
+    }
+
+    /*-------------------------------------------------[ Leak Detection ]---------------------------------------------------*/
+
+    private static final class Tracker extends WeakReference<ByteBuffer>{
+        private final int hash;
+        private Tracker next;
+        private final Throwable allocatedAt;
+        private Throwable freedAt;
+
+        private Tracker(ByteBuffer buffer, int hash, ReferenceQueue<ByteBuffer> queue){
+            super(buffer, queue);
+            this.hash = hash;
+            allocatedAt = new Throwable("allocated at");
+        }
+    }
+
+    private int leakDetectionSampling = LEAK_DETECTION_SAMPLING;
+    private int sampleCounter;
+    private final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<>();
+    private Tracker trackers[] = new Tracker[16];
+    private int trackerCount;
+
+    /**
+     * one in every {@code sampling} allocations is tracked for leaks.
+     * zero disables leak detection
+     */
+    public void setLeakDetectionSampling(int sampling){
+        leakDetectionSampling = Math.max(sampling, 0);
+    }
+
+    public int getLeakDetectionSampling(){
+        return leakDetectionSampling;
+    }
+
+    private boolean tracking(){
+        return leakDetectionSampling>0 || trackerCount>0;
+    }
+
+    private void allocated(ByteBuffer buffer){
+        Tracker tracker;
+        while((tracker=(Tracker)collected.poll())!=null){
+            if(untrack(tracker) && tracker.freedAt==null){
+                ++leaks;
+                report("ByteBuffer garbage collected without being freed", tracker.allocatedAt);
+            }
+        }
+
+        if(trackerCount>0 && (tracker=tracker(buffer))!=null){
+            untrack(tracker);
+            if(buffer.position()!=0 || buffer.limit()!=0){
+                ++useAfterFrees;
+                report("ByteBuffer modified after free", tracker.freedAt);
+            }
+            buffer.clear();
+        }
+
+        if(leakDetectionSampling>0 && ++sampleCounter>=leakDetectionSampling){
+            sampleCounter = 0;
+            int hash = System.identityHashCode(buffer);
+            if(trackerCount>=trackers.length*3/4)
+                rehash();
+            int index = hash & (trackers.length-1);
+            tracker = new Tracker(buffer, hash, collected);
+            tracker.next = trackers[index];
+            trackers[index] = tracker;
+            ++trackerCount;
+        }
+    }
+
+    private Tracker tracker(ByteBuffer buffer){
+        Tracker tracker = trackers[System.identityHashCode(buffer) & (trackers.length-1)];
+        while(tracker!=null && tracker.get()!=buffer)
+            tracker = tracker.next;
+        return tracker;
+    }
+
+    private boolean untrack(Tracker tracker){
+        int index = tracker.hash & (trackers.length-1);
+        Tracker prev = null, t = trackers[index];
+        while(t!=null && t!=tracker){
+            prev = t;
+            t = t.next;
+        }
+        if(t==null)
+            return false;
+        if(prev==null)
+            trackers[index] = t.next;
+        else
+            prev.next = t.next;
+        t.next = null;
+        --trackerCount;
+        return true;
+    }
+
+    private void rehash(){
+        Tracker old[] = trackers;
+        trackers = new Tracker[old.length*2];
+        for(Tracker tracker: old){
+            while(tracker!=null){
+                Tracker next = tracker.next;
+                int index = tracker.hash & (trackers.length-1);
+                tracker.next = trackers[index];
+                trackers[index] = tracker;
+                tracker = next;
+            }
+        }
+    }
+
+    private void report(String message, Throwable site){
+        IllegalStateException ex = new IllegalStateException(message, site);
+        Reactor reactor = Reactor.current();
+        if(reactor==null)
+            ex.printStackTrace();
+        else
+            reactor.handleException(ex);
+    }
+
+    /*-------------------------------------------------[ Statistics ]---------------------------------------------------*/
+
+    private long allocated, freed, hits, misses, dropped, retained, arenas;
+    private long leaks, doubleFrees, useAfterFrees;
+
+    /** number of allocations served from pool */
+    public long getHits(){
+        return hits;
+    }
+
+    /** number of allocations that required new memory */
+    public long getMisses(){
+        return misses;
+    }
+
+    /** number of buffers allocated, but not yet freed */
+    public long getOutstanding(){
+        return allocated-freed;
+    }
+
+    /** number of freed buffers not retained in pool */
+    public long getDropped(){
+        return dropped;
+    }
+
+    /** number of bytes held in pool by this allocator */
+    public long getBytesRetained(){
+        return retained;
+    }
+
+    /** number of direct memory arenas allocated */
+    public long getArenas(){
+        return arenas;
+    }
+
+    /** number of tracked buffers garbage collected without being freed */
+    public long getLeaks(){
+        return leaks;
+    }
+
+    /** number of tracked buffers freed more than once */
+    public long getDoubleFrees(){
+        return doubleFrees;
+    }
+
+    /** number of tracked buffers modified while in pool */
+    public long getUseAfterFrees(){
+        return useAfterFrees;
+    }
+
+    /** number of bytes held in pool by all allocators */
+    public static long getGlobalBytesRetained(){
+        return GLOBAL_RETAINED.get();
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio.util;
+
+import jlibs.nio.Reactor;
+import jlibs.nio.Reactors;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Histogram partitioned by reactor.
+ * <p>
+ * Each reactor records into its own partition, so that recording
+ * is not contended. Partitions are merged on read.
+ * Values recorded from non-reactor threads go to first partition.
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+public class ReactorHistogram{
+    private volatile Histogram partitions[];
+
+    public ReactorHistogram(){
+        List<Reactor> reactors = Reactors.get();
+        partitions = new Histogram[reactors==null || reactors.isEmpty() ? 1 : reactors.size()];
+        for(int i=0; i<partitions.length; i++)
+            partitions[i] = new Histogram();
+    }
+
+    public void record(long value){
+        Reactor reactor = Reactor.current();
+        int id = reactor==null ? 0 : reactor.id;
+        Histogram partitions[] = this.partitions;
+        if(id>=partitions.length)
+            partitions = grow(id+1);
+        partitions[id].record(value);
+    }
+
+    /** reactors started after this histogram is created, get their partitions here */
+    private synchronized Histogram[] grow(int size){
+        Histogram partitions[] = this.partitions;
+        if(size>partitions.length){
+            Histogram grown[] = Arrays.copyOf(partitions, size);
+            for(int i=partitions.length; i<size; i++)
+                grown[i] = new Histogram();
+            this.partitions = partitions = grown;
+        }
+        return partitions;
+    }
+
+    public Histogram merge(){
+        Histogram merged = new Histogram();
+        for(Histogram partition: partitions)
+            merged.add(partition);
+        return merged;
+    }
+
+    public Map<String, Long> toMap(){
+        return merge().toMap();
+    }
+
+    public void reset(){
+        for(Histogram partition: partitions)
+            partition.reset();
+    }
+}
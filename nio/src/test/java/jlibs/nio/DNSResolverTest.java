@@ -0,0 +1,243 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link DNSResolver} against a stub nameserver on loopback.
+ * <p>
+ * The stub answers by host name:
+ * <ul>
+ * <li>{@code ttl.test}: one A record with TTL of one second
+ * <li>{@code nx.test}: NXDOMAIN with SOA whose minimum is one second
+ * <li>{@code slow.test}: one A record, answered after 300 milliseconds
+ * <li>{@code rr.test}: three A records
+ * </ul>
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+public class DNSResolverTest{
+    private DatagramChannel stub;
+    private final Map<String, AtomicInteger> queries = new ConcurrentHashMap<>();
+    private Reactor reactor;
+
+    @BeforeClass
+    public void start() throws Exception{
+        stub = DatagramChannel.open();
+        stub.bind(new InetSocketAddress("127.0.0.1", 0));
+        Thread thread = new Thread(this::serve, "StubNameserver");
+        thread.setDaemon(true);
+        thread.start();
+
+        reactor = new Reactor(0);
+        reactor.start();
+        reactor.invokeAndWait(() -> {
+            reactor.resolver.nameservers = Collections.singletonList((InetSocketAddress)stubAddress());
+            reactor.resolver.queryAAAA = false;
+        });
+    }
+
+    @AfterClass
+    public void stop() throws IOException{
+        reactor.invokeLater(() -> reactor.shutdown(true));
+        stub.close();
+    }
+
+    private SocketAddress stubAddress(){
+        try{
+            return stub.getLocalAddress();
+        }catch(IOException ex){
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Test(description="answer is cached for its TTL, and queried again after expiry")
+    public void ttlExpiry() throws Throwable{
+        Assert.assertEquals(resolve("ttl.test").getHostAddress(), "127.0.0.1");
+        Assert.assertEquals(resolve("ttl.test").getHostAddress(), "127.0.0.1");
+        Assert.assertEquals(queries("ttl.test"), 1);
+
+        Thread.sleep(1100);
+        Assert.assertEquals(resolve("ttl.test").getHostAddress(), "127.0.0.1");
+        Assert.assertEquals(queries("ttl.test"), 2);
+    }
+
+    @Test(description="NXDOMAIN is cached for the SOA minimum")
+    public void negativeCache() throws Throwable{
+        for(int i=0; i<2; i++){
+            try{
+                resolve("nx.test");
+                Assert.fail("UnknownHostException expected");
+            }catch(UnknownHostException ex){
+                Assert.assertEquals(ex.getMessage(), "nx.test");
+            }
+        }
+        Assert.assertEquals(queries("nx.test"), 1);
+
+        Thread.sleep(1100);
+        try{
+            resolve("nx.test");
+            Assert.fail("UnknownHostException expected");
+        }catch(UnknownHostException ex){
+            Assert.assertEquals(queries("nx.test"), 2);
+        }
+    }
+
+    @Test(description="concurrent lookups of same host share single query")
+    public void coalescing() throws Throwable{
+        BlockingQueue<Result<InetAddress>> results = new LinkedBlockingQueue<>();
+        long coalesced[] = new long[1];
+        reactor.invokeAndWait(() -> {
+            coalesced[0] = reactor.resolver.getCoalesced();
+            for(int i=0; i<3; i++)
+                reactor.resolver.resolve("slow.test", results::add);
+        });
+        for(int i=0; i<3; i++){
+            Result<InetAddress> result = results.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(result, "lookup timed out");
+            Assert.assertEquals(result.get().getHostAddress(), "127.0.0.1");
+        }
+        Assert.assertEquals(queries("slow.test"), 1);
+        reactor.invokeAndWait(() -> coalesced[0] = reactor.resolver.getCoalesced()-coalesced[0]);
+        Assert.assertEquals(coalesced[0], 2);
+    }
+
+    @Test(description="successive lookups rotate through addresses")
+    public void roundRobin() throws Throwable{
+        List<String> addresses = new ArrayList<>();
+        for(int i=0; i<4; i++)
+            addresses.add(resolve("rr.test").getHostAddress());
+        Assert.assertEquals(addresses.toString(), "[127.0.0.1, 127.0.0.2, 127.0.0.3, 127.0.0.1]");
+        Assert.assertEquals(queries("rr.test"), 1);
+    }
+
+    private InetAddress resolve(String host) throws Throwable{
+        BlockingQueue<Result<InetAddress>> results = new LinkedBlockingQueue<>();
+        reactor.invokeLater(() -> reactor.resolver.resolve(host, results::add));
+        Result<InetAddress> result = results.poll(10, TimeUnit.SECONDS);
+        Assert.assertNotNull(result, "lookup timed out");
+        return result.get();
+    }
+
+    private int queries(String host){
+        AtomicInteger count = queries.get(host);
+        return count==null ? 0 : count.get();
+    }
+
+    /*-------------------------------------------------[ Stub Nameserver ]---------------------------------------------------*/
+
+    private void serve(){
+        ByteBuffer request = ByteBuffer.allocate(512);
+        ByteBuffer response = ByteBuffer.allocate(512);
+        try{
+            while(true){
+                request.clear();
+                SocketAddress client = stub.receive(request);
+                request.flip();
+                int id = request.getShort() & 0xFFFF;
+                request.position(12);
+                String host = getName(request);
+                request.position(request.position()+4); // type and class
+                int questionEnd = request.position();
+                queries.computeIfAbsent(host, h -> new AtomicInteger()).incrementAndGet();
+
+                boolean nx = host.equals("nx.test");
+                int answers = host.equals("rr.test") ? 3 : (nx ? 0 : 1);
+                response.clear();
+                response.putShort((short)id);
+                response.putShort((short)(0x8180 | (nx ? 3 : 0))); // response, recursion desired and available
+                response.putShort((short)1);
+                response.putShort((short)answers);
+                response.putShort((short)(nx ? 1 : 0));
+                response.putShort((short)0);
+                response.put(request.array(), 12, questionEnd-12);
+                for(int i=1; i<=answers; i++){
+                    response.putShort((short)0xC00C); // pointer to question name
+                    response.putShort((short)1);      // A
+                    response.putShort((short)1);      // IN
+                    response.putInt(host.equals("ttl.test") ? 1 : 300);
+                    response.putShort((short)4);
+                    response.put(new byte[]{ 127, 0, 0, (byte)i });
+                }
+                if(nx){
+                    response.putShort((short)0xC00C);
+                    response.putShort((short)6); // SOA
+                    response.putShort((short)1);
+                    response.putInt(300);
+                    int rdLength = response.position();
+                    response.putShort((short)0);
+                    putName(response, "ns.test");
+                    putName(response, "hostmaster.test");
+                    response.putInt(1);  // serial
+                    response.putInt(60); // refresh
+                    response.putInt(60); // retry
+                    response.putInt(60); // expire
+                    response.putInt(1);  // minimum
+                    response.putShort(rdLength, (short)(response.position()-rdLength-2));
+                }
+                response.flip();
+                if(host.equals("slow.test"))
+                    Thread.sleep(300);
+                stub.send(response, client);
+            }
+        }catch(Exception ex){
+            if(stub.isOpen())
+                ex.printStackTrace();
+        }
+    }
+
+    private static String getName(ByteBuffer buffer){
+        StringBuilder name = new StringBuilder();
+        int len;
+        while((len=buffer.get())!=0){
+            if(name.length()>0)
+                name.append('.');
+            name.append(new String(buffer.array(), buffer.position(), len, StandardCharsets.US_ASCII));
+            buffer.position(buffer.position()+len);
+        }
+        return name.toString();
+    }
+
+    private static void putName(ByteBuffer buffer, String name){
+        for(String label: name.split("\\.")){
+            buffer.put((byte)label.length());
+            buffer.put(label.getBytes(StandardCharsets.US_ASCII));
+        }
+        buffer.put((byte)0);
+    }
+}
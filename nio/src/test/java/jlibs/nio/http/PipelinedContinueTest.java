@@ -0,0 +1,104 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio.http;
+
+import jlibs.nio.Reactors;
+import jlibs.nio.TCPEndpoint;
+import jlibs.nio.http.filters.ReadSocketPayload;
+import jlibs.nio.http.msg.Response;
+import jlibs.nio.http.msg.StringPayload;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+
+/**
+ * @author Santhosh Kumar Tekuri
+ */
+public class PipelinedContinueTest{
+    private HTTPServer server;
+    private int port;
+
+    @BeforeClass
+    public void startServer() throws Exception{
+        Reactors.start(1);
+        server = new HTTPServer(new TCPEndpoint("127.0.0.1", 0));
+        server.maxPipelinedRequests = 4;
+        server.requestFilters = Collections.singletonList(new ReadSocketPayload());
+        server.logHandler = null;
+        server.listener = exchange -> {
+            Response response = new Response();
+            response.setPayload(new StringPayload(exchange.getRequest().uri, "text/plain"));
+            exchange.setResponse(response);
+            return true;
+        };
+        Reactors.get().get(0).invokeAndWait(() -> {
+            try{
+                server.start();
+            }catch(IOException ex){
+                throw new RuntimeException(ex);
+            }
+        });
+        port = ((InetSocketAddress)server.boundTo()).getPort();
+    }
+
+    @AfterClass
+    public void stopServer(){
+        Reactors.shutdown(true);
+    }
+
+    @Test(description="100 Continue must not overtake held response of earlier pipelined request")
+    public void continueAfterHeldResponse() throws Exception{
+        try(Socket socket = new Socket("127.0.0.1", port)){
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                      +"POST /second HTTP/1.1\r\nHost: localhost\r\nExpect: 100-continue\r\nContent-Length: 5\r\n\r\n").getBytes("US-ASCII"));
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Assert.assertEquals(readResponse(in), "200 /first");
+            Assert.assertEquals(readResponse(in), "100 ");
+
+            out.write("hello".getBytes("US-ASCII"));
+            out.flush();
+            Assert.assertEquals(readResponse(in), "200 /second");
+        }
+    }
+
+    /** returns status code followed by payload */
+    @SuppressWarnings("deprecation")
+    private static String readResponse(DataInputStream in) throws IOException{
+        String statusLine = in.readLine();
+        Assert.assertNotNull(statusLine, "connection closed");
+        Assert.assertTrue(statusLine.startsWith("HTTP/1.1 "), statusLine);
+        String status = statusLine.substring(9, 12);
+        int contentLength = 0;
+        String line;
+        while(!(line=in.readLine()).isEmpty()){
+            if(line.regionMatches(true, 0, "Content-Length:", 0, 15))
+                contentLength = Integer.parseInt(line.substring(15).trim());
+        }
+        byte payload[] = new byte[contentLength];
+        in.readFully(payload);
+        return status+' '+new String(payload, "US-ASCII");
+    }
+}
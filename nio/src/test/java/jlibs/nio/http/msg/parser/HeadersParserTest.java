@@ -0,0 +1,66 @@
+/*
+ * JLibs: Common Utilities for Java
+ * Copyright (C) 2009  Santhosh Kumar T <santhosh.tekuri@gmail.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+
+package jlibs.nio.http.msg.parser;
+
+import jlibs.nio.http.msg.Headers;
+import jlibs.nio.http.msg.Status;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author Santhosh Kumar Tekuri
+ */
+public class HeadersParserTest{
+    private static final String HEAD =
+        "Host: localhost  \r\n"
+       +"X-Folded: first part \t\r\n"
+       +"  second part  \r\n"
+       +"\tthird part\r\n"
+       +"Content-Length: 5\n"
+       +"X-Empty:   \r\n"
+       +"\r\n";
+
+    private static String parse(ByteBuffer... buffers){
+        HeadersParser parser = new HeadersParser();
+        Headers headers = new Headers();
+        parser.reset(headers, Status.BAD_REQUEST);
+        for(int i=0; i<buffers.length; i++){
+            boolean done = parser.parse(buffers[i], false);
+            Assert.assertEquals(done, i==buffers.length-1);
+            if(buffers[i].hasRemaining()){
+                // unconsumed bytes are carried over to next buffer, as ReadMessage does
+                ByteBuffer next = ByteBuffer.allocate(buffers[i].remaining()+buffers[i+1].remaining());
+                next.put(buffers[i]).put(buffers[i+1]).flip();
+                buffers[i+1] = next;
+            }
+        }
+        return headers.toString();
+    }
+
+    @Test(description="result must not depend on where request head is split")
+    public void segmentation(){
+        byte bytes[] = HEAD.getBytes(StandardCharsets.ISO_8859_1);
+        String expected = parse(ByteBuffer.wrap(bytes));
+        Assert.assertTrue(expected.contains("X-Folded: first part \t  second part   third part"), expected);
+        for(int split=1; split<bytes.length; split++){
+            String actual = parse(ByteBuffer.wrap(bytes, 0, split).slice(), ByteBuffer.wrap(bytes, split, bytes.length-split).slice());
+            Assert.assertEquals(actual, expected, "split at "+split);
+        }
+    }
+}
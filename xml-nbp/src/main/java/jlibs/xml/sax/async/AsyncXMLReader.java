@@ -252,6 +252,7 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
 
         elem = elements[0];
         elemLock = elemDepth = 0;
+        skipDepth = 0;
         nsFree = 4;
 
         systemID = null;
@@ -330,6 +331,8 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
     }
 
     void rawValue(Chars data){
+        if(skipDepth!=0)
+            return;
         char[] chars = data.array();
         int offset = data.offset();
         int length = data.length();
@@ -353,6 +356,8 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
     }
 
     void charReference(Chars data) throws SAXException{
+        if(skipDepth!=0)
+            return;
         int cp = Integer.parseInt(data.toString(), radix);
         if(XMLChar.isValid(cp)){
             if(valueStarted)
@@ -368,6 +373,8 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
     private ArrayDeque<String> entityStack = new ArrayDeque<String>();
     @SuppressWarnings({"ConstantConditions"})
     void entityReference(Chars data) throws SAXException, IOException{
+        if(skipDepth!=0)
+            return;
         if(entityValue){
             value.append('&').append(data).append(';');
             return;
@@ -529,6 +536,8 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
     }
 
     void attributeEnd() throws SAXException{
+        if(skipDepth!=0)
+            return;
         String attrName = curQName.name;
         String type, attrValue;
         if(dtd==null){
@@ -582,6 +591,8 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
     }
 
     void attributesEnd() throws SAXException{
+        if(skipDepth!=0)
+            return;
         int attrCount = attrs.getLength();
         if(resolveAttributePrefixes){
             for(int i=0; i<attrCount; i++){
@@ -626,6 +637,15 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
         if(elemDepth==elemLock)
             throw fatalError("The element \""+elem.qname.name+"\" must start and end within the same entity");
 
+        if(skipDepth!=0){
+            if(elemDepth>skipDepth){
+                nsFree = elem.nsStart;
+                elem = elements[--elemDepth];
+                return;
+            }
+            skipDepth = 0;
+        }
+
         if(contentHandler!=null){
             contentHandler.endElement(elem.uri, elem.qname.localName, elem.qname.name);
             for(int i=elem.nsStart; i<nsFree; i+=2)
@@ -644,6 +664,28 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
             throw fatalError("expected </"+elem.qname.name+">");
     }
 
+    /*-------------------------------------------------[ Skip ]---------------------------------------------------*/
+
+    // depth of element whose content is being skipped, zero if not skipping
+    private int skipDepth;
+
+    /**
+     * Skips the content of the element being started. This can be called only
+     * from {@link ContentHandler#startElement(String, String, String, Attributes)}.
+     * <p>
+     * No events are reported till the matching {@link ContentHandler#endElement(String, String, String)}.
+     * Markup inside is only checked for balanced tags. attributes, namespaces and
+     * text are neither resolved nor normalized, and entity references are not expanded.
+     */
+    public void skipContent(){
+        if(skipDepth==0)
+            skipDepth = elemDepth;
+    }
+
+    public boolean isSkippingContent(){
+        return skipDepth!=0;
+    }
+
     /*-------------------------------------------------[ PI ]---------------------------------------------------*/
 
     private String piTarget;
@@ -654,12 +696,12 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
     }
 
     void piData(Chars piData) throws SAXException{
-        if(contentHandler!=null)
+        if(contentHandler!=null && skipDepth==0)
             contentHandler.processingInstruction(piTarget, piData.length()>0 ? piData.toString() : "");
     }
 
     void piData() throws SAXException{
-        if(contentHandler!=null)
+        if(contentHandler!=null && skipDepth==0)
             contentHandler.processingInstruction(piTarget, "");
     }
 
@@ -676,7 +718,7 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
     }
     
     void characters(Chars data) throws SAXException{
-        if(contentHandler!=null){
+        if(contentHandler!=null && skipDepth==0){
             int len = data.length();
             if(len>0){
                 if(dtd!=null && dtd.nonMixedElements.contains(elem.qname.name) && isWhitespace(data))
@@ -688,6 +730,8 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
     }
 
     void cdata(Chars data) throws SAXException{
+        if(skipDepth!=0)
+            return;
         if(lexicalHandler!=null)
             lexicalHandler.startCDATA();
         if(contentHandler!=null)
@@ -697,7 +741,7 @@ public final class AsyncXMLReader implements XMLReader, NBHandler<SAXException>,
     }
 
     void comment(Chars data) throws SAXException{
-        if(lexicalHandler!=null)
+        if(lexicalHandler!=null && skipDepth==0)
             lexicalHandler.comment(data.array(), data.offset(), data.length());
     }
 
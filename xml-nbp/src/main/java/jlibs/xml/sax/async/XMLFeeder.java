@@ -199,14 +199,19 @@ public class XMLFeeder extends Feeder{
                             iProlog++;
                             if(iProlog==6){
                                 charBuffer.append("<?xml ");
-                                for(i=0; i<MAX_PROLOG_LENGTH; i++){
+                                // chars read along with prolog start, when it is split across reads
+                                int len = 0;
+                                while(++i<read){
+                                    ch = chars[i];
+                                    charBuffer.append(ch);
+                                    len++;
+                                }
+                                for(; len<MAX_PROLOG_LENGTH && ch!='>'; len++){
                                     singleChar.clear();
                                     read = channel.read(singleChar);
                                     if(read==1){
                                         ch = singleChar.get(0);
                                         charBuffer.append(ch);
-                                        if(ch=='>')
-                                            break;
                                     }else
                                         break;
                                 }
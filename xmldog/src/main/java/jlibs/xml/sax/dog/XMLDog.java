@@ -23,11 +23,14 @@ import jlibs.xml.sax.dog.expr.Expression;
 import jlibs.xml.sax.dog.expr.Literal;
 import jlibs.xml.sax.dog.expr.func.FunctionCall;
 import jlibs.xml.sax.dog.expr.nodset.LocationExpression;
+import jlibs.xml.sax.dog.expr.nodset.NodeSet;
 import jlibs.xml.sax.dog.expr.nodset.PathExpression;
 import jlibs.xml.sax.dog.path.Constraint;
 import jlibs.xml.sax.dog.path.LocationPath;
 import jlibs.xml.sax.dog.path.PositionalPredicate;
+import jlibs.xml.sax.dog.path.PrefixTree;
 import jlibs.xml.sax.dog.path.Step;
+import jlibs.xml.sax.dog.sniff.AsyncSniffer;
 import jlibs.xml.sax.dog.sniff.Event;
 import jlibs.xml.sax.dog.sniff.SAXHandler;
 import jlibs.xml.sax.dog.sniff.XPathParser;
@@ -40,10 +43,21 @@ import javax.xml.namespace.NamespaceContext;
 import javax.xml.xpath.XPathException;
 import javax.xml.xpath.XPathFunctionResolver;
 import javax.xml.xpath.XPathVariableResolver;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
+ * Compiles given xpaths and evaluates them over documents in a single pass.
+ * <p>
+ * Once all xpaths are added, {@link #freeze()} makes this instance immutable.
+ * A frozen instance can be shared across threads, and its sniff methods which
+ * don't take an {@link Event} reuse one Event and XMLReader per thread.
+ *
  * @author Santhosh Kumar T
  */
 public final class XMLDog{
@@ -68,21 +82,75 @@ public final class XMLDog{
     }
 
     public void setAllowDefaultPrefixMapping(boolean allow){
+        checkNotFrozen();
         parser.setAllowDefaultPrefixMapping(allow);
     }
 
+    /*-------------------------------------------------[ Freeze ]---------------------------------------------------*/
+
+    private volatile boolean frozen;
+
+    /**
+     * no more xpaths can be added after this call.
+     * compiled expressions are never modified by sniffing, so a frozen
+     * instance can be safely used by multiple threads concurrently
+     */
+    public XMLDog freeze(){
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen(){
+        return frozen;
+    }
+
+    private void checkNotFrozen(){
+        if(frozen)
+            throw new IllegalStateException("XMLDog is frozen");
+    }
+
+    /*-------------------------------------------------[ Shared Prefixes ]---------------------------------------------------*/
+
+    private boolean sharePrefixes;
+    private PrefixTree prefixTree;
+
+    /**
+     * when enabled, xpaths added afterwards which are simple absolute
+     * paths (see {@link PrefixTree#isSupported(NodeSet)}) share their common
+     * prefixes, and are evaluated together. this makes matching of nodes
+     * scale with number of distinct prefixes rather than number of xpaths.
+     * note that each xpath still gets its own result per document, so
+     * sniffing as a whole remains linear in number of xpaths
+     */
+    public void setSharePrefixes(boolean share){
+        checkNotFrozen();
+        sharePrefixes = share;
+        if(share && prefixTree==null)
+            prefixTree = new PrefixTree();
+    }
+
+    public boolean isSharePrefixes(){
+        return sharePrefixes;
+    }
+
+    /*-------------------------------------------------[ XPaths ]---------------------------------------------------*/
+
     private final List<Expression> expressions = new ArrayList<Expression>();
     private final List<Expression> docExpressions = new ArrayList<Expression>();
     private final List<Expression> globalExpressions = new ArrayList<Expression>();
 
     public Expression addXPath(String xpath) throws SAXPathException{
+        checkNotFrozen();
         Expression compiledExpr = parser.parse(xpath, true);
         compiledExpr.setXPath(xpath);
+        if(sharePrefixes && compiledExpr instanceof NodeSet)
+            prefixTree.add((NodeSet)compiledExpr);
         addXPath(compiledExpr);
         return compiledExpr;
     }
 
     public Expression addForEach(String forEach, String xpath) throws SAXPathException{
+        checkNotFrozen();
         Expression forEachExpr = parser.parse(forEach, true);
         LocationPath union = new LocationPath(Scope.LOCAL, 0);
         if(forEachExpr instanceof LocationExpression)
@@ -194,11 +262,26 @@ public final class XMLDog{
     }
 
     public XPathResults sniff(InputSource source, boolean useSTAX) throws XPathException{
-        Event event = createEvent();
-        XPathResults results = new XPathResults(event);
-        event.setListener(results);
-        sniff(event, source, useSTAX);
-        return results;
+        Sniffer sniffer = frozen ? sniffers.get() : null;
+        if(sniffer==null || sniffer.busy){
+            Event event = createEvent();
+            XPathResults results = new XPathResults(event);
+            event.setListener(results);
+            sniff(event, source, useSTAX);
+            return results;
+        }
+
+        sniffer.busy = true;
+        try{
+            Event event = sniffer.event;
+            event.reset();
+            XPathResults results = new XPathResults(event);
+            event.setListener(results);
+            sniff(event, source, sniffer.reader(useSTAX));
+            return results;
+        }finally{
+            sniffer.busy = false;
+        }
     }
 
     public void sniff(Event event, InputSource source) throws XPathException{
@@ -206,10 +289,110 @@ public final class XMLDog{
     }
 
     public XPathResults sniff(InputSource source) throws XPathException{
-        Event event = createEvent();
-        XPathResults results = new XPathResults(event);
-        event.setListener(results);
-        sniff(event, source);
-        return results;
+        return sniff(source, false);
+    }
+
+    /*-------------------------------------------------[ Push ]---------------------------------------------------*/
+
+    /**
+     * returns sniffer to which document bytes can be pushed as they arrive.
+     * instant results are notified to listeners of event while feeding
+     *
+     * @param encoding encoding of document, null to detect it
+     */
+    public AsyncSniffer sniff(Event event, String encoding) throws XPathException{
+        return new AsyncSniffer(event, null, encoding);
+    }
+
+    /**
+     * returns sniffer which reads document from given non-blocking channel,
+     * whenever {@link AsyncSniffer#feed()} is called
+     *
+     * @param encoding encoding of document, null to detect it
+     */
+    public AsyncSniffer sniff(Event event, ReadableByteChannel channel, String encoding) throws XPathException{
+        return new AsyncSniffer(event, channel, encoding);
+    }
+
+    /*-------------------------------------------------[ Pool ]---------------------------------------------------*/
+
+    /**
+     * Event and XMLReaders reused by a thread, for frozen XMLDog.
+     * busy is used to detect sniff called recursively from listener
+     */
+    private final class Sniffer{
+        final Event event = createEvent();
+        private XMLReader saxReader;
+        private XMLReader staxReader;
+        boolean busy;
+
+        XMLReader reader(boolean useSTAX) throws XPathException{
+            try{
+                if(useSTAX){
+                    if(staxReader==null)
+                        staxReader = new STAXXMLReader();
+                    return staxReader;
+                }else{
+                    if(saxReader==null)
+                        saxReader = SAXUtil.newSAXFactory(true, false, false).newSAXParser().getXMLReader();
+                    return saxReader;
+                }
+            }catch(Exception ex){
+                throw new XPathException(ex);
+            }
+        }
+    }
+
+    private final ThreadLocal<Sniffer> sniffers = new ThreadLocal<Sniffer>(){
+        @Override
+        protected Sniffer initialValue(){
+            return new Sniffer();
+        }
+    };
+
+    /*-------------------------------------------------[ Batch ]---------------------------------------------------*/
+
+    /**
+     * sniffs given documents in parallel using given executor,
+     * for example a {@code ForkJoinPool}. returned results are
+     * in the order of sources.
+     *
+     * @throws IllegalStateException if this instance is not frozen
+     */
+    public List<XPathResults> sniff(List<InputSource> sources, final boolean useSTAX, ExecutorService executor) throws XPathException{
+        if(!frozen)
+            throw new IllegalStateException("XMLDog must be frozen to sniff concurrently");
+        List<Future<XPathResults>> futures = new ArrayList<Future<XPathResults>>(sources.size());
+        for(final InputSource source: sources){
+            futures.add(executor.submit(new Callable<XPathResults>(){
+                @Override
+                public XPathResults call() throws XPathException{
+                    return sniff(source, useSTAX);
+                }
+            }));
+        }
+
+        List<XPathResults> results = new ArrayList<XPathResults>(futures.size());
+        try{
+            for(Future<XPathResults> future: futures)
+                results.add(future.get());
+            return results;
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new XPathException(ex);
+        }catch(ExecutionException ex){
+            if(ex.getCause() instanceof XPathException)
+                throw (XPathException)ex.getCause();
+            throw new XPathException(ex.getCause());
+        }finally{
+            if(results.size()<futures.size()){
+                for(Future<XPathResults> future: futures)
+                    future.cancel(false);
+            }
+        }
+    }
+
+    public List<XPathResults> sniff(List<InputSource> sources, ExecutorService executor) throws XPathException{
+        return sniff(sources, false, executor);
     }
 }
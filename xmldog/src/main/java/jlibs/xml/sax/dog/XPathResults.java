@@ -32,19 +32,26 @@ import java.util.Map;
  */
 public class XPathResults extends EvaluationListener{
     private Event event;
+    private NamespaceContext nsContext;
     private Map<Expression, Object> results = new HashMap<Expression, Object>();
 
     public XPathResults(Event event){
         this.event = event;
     }
 
+    @Override
+    public void startDocument(NamespaceContext nsContext){
+        // remembered, because event could be reset and reused for next document
+        this.nsContext = nsContext;
+    }
+
     @Override
     public void finished(Evaluation evaluation){
         results.put(evaluation.expression, evaluation.getResult());
     }
 
     public NamespaceContext getNamespaceContext(){
-        return event.getNamespaceContext();
+        return nsContext!=null ? nsContext : event.getNamespaceContext();
     }
 
     @SuppressWarnings({"unchecked"})
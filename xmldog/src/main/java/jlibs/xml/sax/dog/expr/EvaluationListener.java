@@ -16,10 +16,19 @@
 
 package jlibs.xml.sax.dog.expr;
 
+import javax.xml.namespace.NamespaceContext;
+
 /**
  * @author Santhosh Kumar T
  */
 public abstract class EvaluationListener{
     public boolean disposed;
     public abstract void finished(Evaluation evaluation);
+
+    /**
+     * called on listener set on event, when document starts and before
+     * any evaluation of it is finished. the given context is filled with
+     * prefixes used in results, as document is sniffed
+     */
+    public void startDocument(NamespaceContext nsContext){}
 }
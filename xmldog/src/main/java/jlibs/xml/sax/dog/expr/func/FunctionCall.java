@@ -24,6 +24,7 @@ import jlibs.xml.sax.dog.expr.Expression;
 import jlibs.xml.sax.dog.expr.Literal;
 import jlibs.xml.sax.dog.expr.nodset.ExactPosition;
 import jlibs.xml.sax.dog.expr.nodset.Position;
+import jlibs.xml.sax.dog.expr.nodset.StringEquals;
 import jlibs.xml.sax.dog.expr.nodset.Strings;
 import jlibs.xml.sax.dog.sniff.Event;
 
@@ -155,9 +156,17 @@ public final class FunctionCall extends Expression{
                 }else
                     System.out.println(members[0].resultType+"=="+members[1].resultType);
             }else if(member0Type==DataType.STRING){
-                if(member1Type==DataType.STRING)
+                if(member1Type==DataType.STRING){
+                    Expression stringEquals = stringEquals(members[0], members[1]);
+                    if(stringEquals==null)
+                        stringEquals = stringEquals(members[1], members[0]);
+                    if(stringEquals!=null)
+                        return stringEquals;
                     return new FunctionCall(Functions.STRING_EQUALS_STRING, members, scope);
-                else if(member1Type==DataType.STRINGS){
+                }else if(member1Type==DataType.STRINGS){
+                    Expression stringEquals = stringEquals(members[1], members[0]);
+                    if(stringEquals!=null)
+                        return stringEquals;
                     FunctionCall functionCall = new FunctionCall(Functions.STRINGS_EQUALS_STRING);
                     functionCall.members[0] = members[1];
                     functionCall.members[1] = members[0];
@@ -168,8 +177,12 @@ public final class FunctionCall extends Expression{
             }else if(member0Type==DataType.STRINGS){
                 if(member1Type==DataType.STRINGS)
                     return new FunctionCall(Functions.STRINGS_EQUALS_STRINGS, members, scope);
-                else if(member1Type==DataType.STRING)
+                else if(member1Type==DataType.STRING){
+                    Expression stringEquals = stringEquals(members[0], members[1]);
+                    if(stringEquals!=null)
+                        return stringEquals;
                     return new FunctionCall(Functions.STRINGS_EQUALS_STRING, members, scope);
+                }
                 else if(member1Type==DataType.NUMBER){
                     Strings member0 = (Strings)members[0];
                     members[0] = new Strings(member0.locationPath, DataType.NUMBERS, true, false);
@@ -182,6 +195,21 @@ public final class FunctionCall extends Expression{
         return this;
     }
 
+    /**
+     * returns {@code strings=literal} as {@link StringEquals}, which compares text
+     * without creating strings. returns null, if members are not of that form.
+     * string(path) is not supported, unless path selects context node, because
+     * it compares only first node, rather than any node
+     */
+    private static Expression stringEquals(Expression strings, Expression literal){
+        if(strings instanceof Strings && literal instanceof Literal && literal.resultType==DataType.STRING){
+            Strings expr = (Strings)strings;
+            if(expr.resultType==DataType.STRINGS || expr.locationPath.steps.length==0)
+                return new StringEquals(expr.locationPath, (String)literal.getResult());
+        }
+        return null;
+    }
+
     @Override
     public String toString(){
         String separator = ", ";
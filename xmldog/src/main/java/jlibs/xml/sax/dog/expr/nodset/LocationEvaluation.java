@@ -55,7 +55,7 @@ public final class LocationEvaluation extends AxisListener<LocationExpression> i
         this.index = stepIndex;
         lastStep = index==expression.locationPath.steps.length-1;
 
-        if(expression instanceof Strings)
+        if(expression instanceof Strings || expression instanceof StringEquals)
             stringEvaluations = new ArrayList<Evaluation>();
 
         currentStep = expression.locationPath.steps[stepIndex];
@@ -84,7 +84,7 @@ public abstract class LocationExpression extends Expression{
     protected abstract String getName();
 
     @Override
-    public final String toString(){
+    public String toString(){
         return String.format("%s(%s)", getName(), locationPath);
     }
 }
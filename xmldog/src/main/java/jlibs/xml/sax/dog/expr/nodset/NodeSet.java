@@ -20,6 +20,7 @@ import jlibs.core.util.LongTreeMap;
 import jlibs.xml.sax.dog.DataType;
 import jlibs.xml.sax.dog.NodeItem;
 import jlibs.xml.sax.dog.path.LocationPath;
+import jlibs.xml.sax.dog.path.PrefixTree;
 import jlibs.xml.sax.dog.sniff.Event;
 
 import java.util.Collections;
@@ -43,8 +44,14 @@ public final class NodeSet extends LocationExpression{
         return event.nodeItem();
     }
 
+    /** set when this xpath is evaluated through a shared {@link PrefixTree} */
+    public PrefixTree.Node prefixNode;
+    public int prefixIndex;
+
     @Override
     public Object getResult(Event event){
+        if(prefixNode!=null)
+            return PrefixTreeEvaluation.newResult(this, event);
         if(locationPath.steps.length==0){
             NodeItem nodeItem = event.nodeItem();
             if(rawResult){
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2015 Santhosh Kumar Tekuri
+ *
+ * The JLibs authors license this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package jlibs.xml.sax.dog.expr.nodset;
+
+import jlibs.core.util.LongTreeMap;
+import jlibs.xml.sax.dog.NodeItem;
+import jlibs.xml.sax.dog.expr.Evaluation;
+import jlibs.xml.sax.dog.expr.Expression;
+import jlibs.xml.sax.dog.path.AxisListener;
+import jlibs.xml.sax.dog.path.EventID;
+import jlibs.xml.sax.dog.path.PrefixTree;
+import jlibs.xml.sax.dog.path.Step;
+import jlibs.xml.sax.dog.sniff.Event;
+
+/**
+ * Evaluates all xpaths in a {@link PrefixTree} over a document.
+ * <p>
+ * For each tree node hit by a document node, one listener is registered
+ * per transition axis (plus one per non-name transition) on that document node,
+ * irrespective of number of xpaths sharing that prefix. So the work done per
+ * event is proportional to the number of tree nodes active, rather than
+ * number of xpaths.
+ * <p>
+ * The xpaths ending at a tree node are finished, once there are no
+ * listeners alive for any of its ancestors.
+ *
+ * @author Santhosh Kumar T
+ */
+public final class PrefixTreeEvaluation{
+    private final PrefixTree tree;
+    private final PrefixTree.Index index;
+    private final Event event;
+    private final EventID documentID;
+
+    /** number of listeners alive, indexed by position of tree node */
+    private final int live[];
+    private final Result results[];
+    private boolean started;
+
+    private PrefixTreeEvaluation(PrefixTree tree, Event event){
+        this.tree = tree;
+        index = tree.getIndex();
+        this.event = event;
+        documentID = event.getID();
+        live = new int[index.nodes.length];
+        results = new Result[index.expressions.length];
+    }
+
+    static Evaluation newResult(NodeSet expr, Event event){
+        PrefixTree tree = expr.prefixNode.tree;
+        PrefixTreeEvaluation evaluation = event.prefixTreeEvaluation;
+        if(evaluation==null || evaluation.tree!=tree)
+            event.prefixTreeEvaluation = evaluation = new PrefixTreeEvaluation(tree, event);
+        return evaluation.results[expr.prefixIndex] = new Result(expr, evaluation);
+    }
+
+    private void start(){
+        if(!started){
+            started = true;
+            listen(0, documentID);
+        }
+    }
+
+    /*-------------------------------------------------[ Transitions ]---------------------------------------------------*/
+
+    private void listen(int position, EventID eventID){
+        PrefixTree.Transitions transitionsArray[] = index.nodes[position].transitions;
+        for(int axis=0; axis<transitionsArray.length; axis++){
+            PrefixTree.Transitions transitions = transitionsArray[axis];
+            if(transitions!=null && !eventID.isEmpty(axis)){
+                if(!transitions.names.isEmpty())
+                    addListener(eventID, transitions.nameStep, new Listener(position, transitions, -1));
+                for(PrefixTree.Node other: transitions.others)
+                    addListener(eventID, other.step, new Listener(position, transitions, index.positions[other.id]));
+            }
+        }
+    }
+
+    private void addListener(EventID eventID, Step step, Listener listener){
+        live[listener.position]++;
+        eventID.addListener(event, step, listener);
+    }
+
+    private void hit(int position, EventID eventID){
+        int expressions[] = index.expressions;
+        for(int i=index.expressionStarts[position], end=index.expressionStarts[position+1]; i<end; i++){
+            Result result = results[expressions[i]];
+            if(result!=null)
+                result.consume();
+        }
+        listen(position, eventID);
+    }
+
+    private void expired(int position){
+        if(--live[position]>0)
+            return;
+        int parents[] = index.parents;
+        for(int parent=parents[position]; parent!=-1; parent=parents[parent]){
+            if(live[parent]>0)
+                return;
+        }
+        finished(position);
+    }
+
+    /**
+     * called when node at given position and its ancestors have no listeners alive.
+     * finishes the xpaths of its descendants, which can no longer be hit
+     */
+    private void finished(int position){
+        int ends[] = index.ends;
+        int expressionStarts[] = index.expressionStarts;
+        int expressions[] = index.expressions;
+        for(int descendant=position+1, end=ends[position]; descendant<end;){
+            for(int i=expressionStarts[descendant], iEnd=expressionStarts[descendant+1]; i<iEnd; i++){
+                Result result = results[expressions[i]];
+                if(result!=null)
+                    result.finished();
+            }
+            // descendants of a node with listeners alive, can still be hit
+            descendant = live[descendant]>0 ? ends[descendant] : descendant+1;
+        }
+    }
+
+    private final class Listener extends AxisListener<Expression>{
+        private final int position;
+        private final PrefixTree.Transitions transitions;
+
+        /** position of target node, -1 if target is looked up by name */
+        private final int target;
+
+        private Listener(int position, PrefixTree.Transitions transitions, int target){
+            super(null, event.order());
+            this.position = position;
+            this.transitions = transitions;
+            this.target = target;
+        }
+
+        @Override
+        public void onHit(EventID eventID){
+            if(target==-1){
+                PrefixTree.Node node = transitions.get(event.namespaceURI(), event.localName());
+                if(node!=null)
+                    hit(index.positions[node.id], eventID);
+            }else
+                hit(target, eventID);
+        }
+
+        @Override
+        public void expired(){
+            PrefixTreeEvaluation.this.expired(position);
+        }
+
+        @Override
+        public void start(){}
+
+        @Override
+        public Object getResult(){
+            return null;
+        }
+
+        @Override
+        public void finished(Evaluation evaluation){}
+    }
+
+    /*-------------------------------------------------[ Result ]---------------------------------------------------*/
+
+    private static final class Result extends Evaluation<NodeSet> implements NodeSetListener.Support{
+        private final PrefixTreeEvaluation evaluation;
+        private final Event event;
+        private boolean instant;
+
+        private Result(NodeSet expression, PrefixTreeEvaluation evaluation){
+            super(expression, evaluation.event.order());
+            this.evaluation = evaluation;
+            event = evaluation.event;
+        }
+
+        @Override
+        public void start(){
+            instant = event.hasInstantListener(expression);
+            evaluation.start();
+        }
+
+        /** shared result of xpaths not hit, its values view is created upfront as it is read concurrently */
+        private static final LongTreeMap<Object> EMPTY = new LongTreeMap<Object>();
+        static{
+            EMPTY.values();
+        }
+
+        /** created on first hit, as most xpaths sharing a tree are not hit by a document */
+        private LongTreeMap<Object> result;
+        private long lastOrder = -1;
+
+        private void consume(){
+            // a node can be hit more than once through descendant axis,
+            // but all such hits happen while event is at that node
+            long order = event.order();
+            if(finished || order==lastOrder)
+                return;
+            lastOrder = order;
+
+            Object resultItem = event.nodeItem();
+            if(instant){
+                event.onInstantResult(expression, (NodeItem)resultItem);
+                if(nodeSetListener!=null)
+                    nodeSetListener.mayHit();
+            }else{
+                if(result==null)
+                    result = new LongTreeMap<Object>();
+                result.put(order, resultItem);
+                if(nodeSetListener!=null)
+                    nodeSetListener.mayHit();
+            }
+        }
+
+        private boolean finished;
+        private void finished(){
+            if(!finished){
+                finished = true;
+                if(nodeSetListener!=null)
+                    nodeSetListener.finished();
+                if(listener!=null)
+                    fireFinished();
+            }
+        }
+
+        private Object finalResult;
+
+        @Override
+        public Object getResult(){
+            if(instant)
+                return null;
+            if(finalResult==null){
+                LongTreeMap<Object> result = this.result;
+                if(result==null)
+                    result = expression.rawResult ? new LongTreeMap<Object>() : EMPTY;
+                finalResult = expression.getResult(result);
+            }
+            return finalResult;
+        }
+
+        @Override
+        public void finished(Evaluation evaluation){}
+
+        @Override
+        protected void dispose(){
+            finished = true;
+            if(result!=null){
+                if(nodeSetListener!=null){
+                    for(LongTreeMap.Entry<Object> entry = result.firstEntry(); entry!=null ; entry = entry.next())
+                        nodeSetListener.discard(entry.getKey());
+                }
+                result.clear();
+            }
+        }
+
+        private NodeSetListener nodeSetListener;
+
+        @Override
+        public void setNodeSetListener(NodeSetListener nodeSetListener){
+            this.nodeSetListener = nodeSetListener;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2015 Santhosh Kumar Tekuri
+ *
+ * The JLibs authors license this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package jlibs.xml.sax.dog.expr.nodset;
+
+import jlibs.core.util.LongTreeMap;
+import jlibs.xml.sax.dog.DataType;
+import jlibs.xml.sax.dog.NodeType;
+import jlibs.xml.sax.dog.expr.Evaluation;
+import jlibs.xml.sax.dog.path.Axis;
+import jlibs.xml.sax.dog.path.AxisListener;
+import jlibs.xml.sax.dog.path.EventID;
+import jlibs.xml.sax.dog.path.LocationPath;
+import jlibs.xml.sax.dog.path.Step;
+import jlibs.xml.sax.dog.path.tests.Text;
+import jlibs.xml.sax.dog.sniff.Event;
+
+/**
+ * Tells whether string-value of any node selected by location path equals
+ * given literal. i.e, {@code path='literal'} such as {@code .='x'} or {@code text()='y'}
+ * <p>
+ * Unlike {@link Strings}, no string is created for the nodes selected. Text is
+ * compared against the literal as it arrives, and string-value of an element
+ * is matched text node by text node, failing as soon as it diverges from the literal.
+ *
+ * @author Santhosh Kumar T
+ */
+public final class StringEquals extends LocationExpression{
+    public final String literal;
+
+    public StringEquals(LocationPath locationPath, String literal){
+        super(locationPath, DataType.BOOLEAN, true, false);
+        this.literal = literal;
+    }
+
+    @Override
+    public Object getResult(){
+        return Boolean.FALSE;
+    }
+
+    @Override
+    protected Object getResultItem(Event event){
+        switch(event.type()){
+            case NodeType.DOCUMENT:
+            case NodeType.ELEMENT:
+                return new StringEqualsEvaluation(this, event);
+            default:
+                return event.valueEquals(literal) ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    @Override
+    protected Object getResult(LongTreeMap<Object> result){
+        if(rawResult){
+            // same as boolean(path), i.e only matching nodes are kept
+            LongTreeMap<Object> matches = new LongTreeMap<Object>();
+            for(LongTreeMap.Entry<Object> entry=result.firstEntry(); entry!=null; entry=entry.next()){
+                if(entry.value==Boolean.TRUE)
+                    matches.put(entry.getKey(), entry.value);
+            }
+            return matches;
+        }
+        for(LongTreeMap.Entry<Object> entry=result.firstEntry(); entry!=null; entry=entry.next()){
+            if(entry.value==Boolean.TRUE)
+                return Boolean.TRUE;
+        }
+        return Boolean.FALSE;
+    }
+
+    @Override
+    protected String getName(){
+        return "strings";
+    }
+
+    @Override
+    public String toString(){
+        return String.format("%s = '%s'", super.toString(), literal);
+    }
+}
+
+/**
+ * Matches string-value of element or document against literal,
+ * without concatenating its descendant text nodes
+ */
+final class StringEqualsEvaluation extends AxisListener<StringEquals>{
+    private static final Step DESCENDANT_TEXT_STEP = new Step(Axis.DESCENDANT, Text.INSTANCE);
+
+    private final Event event;
+    private final EventID eventID;
+
+    /** number of chars of literal matched by text hit so far */
+    private int matched;
+    private Boolean result;
+
+    StringEqualsEvaluation(StringEquals expression, Event event){
+        super(expression, event.order());
+        this.event = event;
+        eventID = event.getID();
+    }
+
+    @Override
+    public void start(){
+        eventID.addListener(event, DESCENDANT_TEXT_STEP, this);
+    }
+
+    @Override
+    public void onHit(EventID eventID){
+        String literal = expression.literal;
+        StringBuilder text = event.buff;
+        int length = text.length();
+        if(matched+length>literal.length()){
+            finished(Boolean.FALSE);
+            return;
+        }
+        for(int i=0; i<length; i++){
+            if(text.charAt(i)!=literal.charAt(matched+i)){
+                finished(Boolean.FALSE);
+                return;
+            }
+        }
+        matched += length;
+    }
+
+    @Override
+    public void expired(){
+        finished(matched==expression.literal.length() ? Boolean.TRUE : Boolean.FALSE);
+    }
+
+    private void finished(Boolean result){
+        manuallyExpired = true; // no more text is needed
+        this.result = result;
+        if(listener!=null)
+            fireFinished();
+    }
+
+    @Override
+    public Object getResult(){
+        return result;
+    }
+
+    @Override
+    public void finished(Evaluation evaluation){}
+
+    @Override
+    protected void dispose(){
+        manuallyExpired = true;
+    }
+}
@@ -36,7 +36,12 @@ import java.util.List;
 public final class StringEvaluation extends AxisListener<Strings>{
     private static final Step DESCENDANT_TEXT_STEP = new Step(Axis.DESCENDANT, Text.INSTANCE);
 
-    private StringBuilder buff = new StringBuilder(50);
+    /** string-value, when it is made of single text node */
+    private String text;
+
+    /** string-value, created only when more than one text node is hit */
+    private StringBuilder buff;
+
     private Event event;
     private EventID eventID;
 
@@ -62,7 +67,12 @@ public final class StringEvaluation extends AxisListener<Strings>{
     @Override
     public void onHit(EventID eventID){
         StringBuilder str = event.buff;
-        buff.append(str);
+        if(buff!=null)
+            buff.append(str);
+        else if(text==null)
+            text = event.value();
+        else
+            buff = new StringBuilder(text.length()+str.length()+16).append(text).append(str);
         if(numberListeners.size()>0){
             for(int i=str.length()-1; i>=0; --i){
                 char ch = str.charAt(i);
@@ -126,14 +136,21 @@ public final class StringEvaluation extends AxisListener<Strings>{
         listeners.clear();
     }
 
+    private String value(){
+        if(buff!=null)
+            return buff.toString();
+        return text!=null ? text : "";
+    }
+
     @Override
     protected void fireFinished(){
+        String value = value();
         if(stringListeners.size()>0)
-            fireFinished(stringListeners, buff.toString());
+            fireFinished(stringListeners, value);
         if(numberListeners.size()>0){
             double d;
             try{
-                d = Double.parseDouble(buff.toString());
+                d = Double.parseDouble(value);
             }catch(NumberFormatException ex){
                 d = Double.NaN;
             }
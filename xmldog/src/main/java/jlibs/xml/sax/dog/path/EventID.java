@@ -266,6 +266,19 @@ public final class EventID{
         }
     }
 
+    private boolean isActive(int axis){
+        AxisEntry axisEntry = axisEntries[axis];
+        return axisEntry!=null && axisEntry.active;
+    }
+
+    /**
+     * tells if any node inside the current element can hit
+     * listeners of this eventID.
+     */
+    public boolean isInterestedInContent(){
+        return isActive(Axis.CHILD) || isActive(Axis.DESCENDANT) || isActive(Axis.FOLLOWING);
+    }
+
     /*-------------------------------------------------[ Axis Matching ]---------------------------------------------------*/
 
     private int d;
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2015 Santhosh Kumar Tekuri
+ *
+ * The JLibs authors license this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package jlibs.xml.sax.dog.path;
+
+import jlibs.xml.sax.dog.Scope;
+import jlibs.xml.sax.dog.expr.nodset.NodeSet;
+import jlibs.xml.sax.dog.path.tests.QName;
+import jlibs.xml.sax.dog.path.tests.Star;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges common step prefixes of absolute location paths into a tree.
+ * <p>
+ * Each node represents the steps from root to it, and the xpaths ending
+ * there. Transitions from a node are grouped by axis, and transitions
+ * on element/attribute names are keyed by namespace and localName, so
+ * that a hit is dispatched to matching nodes without testing each
+ * transition.
+ * <p>
+ * Only paths with child, descendant and attribute steps without predicates
+ * are supported. see {@link #isSupported(NodeSet)}
+ *
+ * @author Santhosh Kumar T
+ */
+public final class PrefixTree{
+    public final Node root = new Node(this, null, null, 0);
+    private int nodeCount = 1;
+    private int expressionCount;
+
+    public int getNodeCount(){
+        return nodeCount;
+    }
+
+    public int getExpressionCount(){
+        return expressionCount;
+    }
+
+    public static boolean isSupported(NodeSet expr){
+        LocationPath path = expr.locationPath;
+        if(expr.scope()!=Scope.DOCUMENT || path.steps.length==0 || path.contexts.size()>0)
+            return false;
+        if(path.predicateSet.getPredicate()!=null || path.hitExpression!=null)
+            return false;
+        for(Step step: path.steps){
+            switch(step.axis){
+                case Axis.CHILD:
+                case Axis.DESCENDANT:
+                case Axis.ATTRIBUTE:
+                    break;
+                default:
+                    return false;
+            }
+            PredicateSet predicateSet = step.predicateSet;
+            if(predicateSet.getPredicate()!=null || predicateSet.hasPosition || predicateSet.impossible)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * adds given expression to this tree, if it is supported.
+     * the expression then evaluates using this tree
+     *
+     * @return false if given expression is not supported
+     */
+    public boolean add(NodeSet expr){
+        if(!isSupported(expr))
+            return false;
+
+        Node node = root;
+        for(Step step: expr.locationPath.steps)
+            node = node.transition(step);
+        node.expressions.add(expr);
+        expr.prefixNode = node;
+        expr.prefixIndex = expressionCount++;
+        index = null;
+        return true;
+    }
+
+    /*-------------------------------------------------[ Index ]---------------------------------------------------*/
+
+    private volatile Index index;
+
+    /**
+     * returns flattened view of this tree, which is rebuilt
+     * only if expressions are added since last call
+     */
+    public Index getIndex(){
+        Index index = this.index;
+        if(index==null){
+            synchronized(this){
+                index = this.index;
+                if(index==null)
+                    this.index = index = new Index(this);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Nodes of tree in depth-first order, so that descendants of
+     * a node immediately follow it. This keeps the nodes of a subtree
+     * in a contiguous range, which can be scanned without chasing
+     * references.
+     */
+    public static final class Index{
+        /** nodes in depth-first order */
+        public final Node nodes[];
+
+        /** position of node in {@link #nodes}, indexed by {@link Node#id} */
+        public final int positions[];
+
+        /** position of parent node, -1 for root */
+        public final int parents[];
+
+        /** nodes[i+1, ends[i]) are the descendants of nodes[i] */
+        public final int ends[];
+
+        /** prefixIndex of xpaths ending at nodes[i] are expressions[expressionStarts[i], expressionStarts[i+1]) */
+        public final int expressionStarts[];
+        public final int expressions[];
+
+        private Index(PrefixTree tree){
+            nodes = new Node[tree.nodeCount];
+            positions = new int[nodes.length];
+            parents = new int[nodes.length];
+            ends = new int[nodes.length];
+            expressionStarts = new int[nodes.length+1];
+            expressions = new int[tree.expressionCount];
+            add(tree.root, -1, 0);
+            expressionStarts[nodes.length] = expressions.length;
+        }
+
+        private int expressionsAdded;
+        private int add(Node node, int parent, int position){
+            nodes[position] = node;
+            positions[node.id] = position;
+            parents[position] = parent;
+            expressionStarts[position] = expressionsAdded;
+            for(NodeSet expr: node.expressions)
+                expressions[expressionsAdded++] = expr.prefixIndex;
+
+            int next = position+1;
+            for(Node child: node.children)
+                next = add(child, position, next);
+            ends[position] = next;
+            return next;
+        }
+    }
+
+    /*-------------------------------------------------[ Node ]---------------------------------------------------*/
+
+    public static final class Node{
+        public final PrefixTree tree;
+        public final Node parent;
+        public final Step step;
+        public final int id;
+
+        /** xpaths ending at this node */
+        public final List<NodeSet> expressions = new ArrayList<NodeSet>();
+
+        /** transitions from this node, indexed by axis */
+        public final Transitions transitions[] = new Transitions[Axis.DESCENDANT+1];
+        public final List<Node> children = new ArrayList<Node>();
+
+        private Node(PrefixTree tree, Node parent, Step step, int id){
+            this.tree = tree;
+            this.parent = parent;
+            this.step = step;
+            this.id = id;
+        }
+
+        private Node transition(Step step){
+            Transitions transitions = this.transitions[step.axis];
+            if(transitions==null)
+                this.transitions[step.axis] = transitions = new Transitions(step.axis);
+
+            Node node = transitions.get(step.constraint);
+            if(node==null){
+                node = new Node(tree, this, new Step(step.axis, step.constraint), tree.nodeCount++);
+                transitions.add(node);
+                children.add(node);
+            }
+            return node;
+        }
+
+        @Override
+        public String toString(){
+            return parent==null ? "" : parent.toString()+'/'+step;
+        }
+    }
+
+    public static final class Transitions{
+        /** step used to listen for names in {@link #names} */
+        public final Step nameStep;
+
+        /** namespaceURI -> localName -> node */
+        public final Map<String, Map<String, Node>> names = new HashMap<String, Map<String, Node>>();
+
+        /** nodes whose constraint is not a name */
+        public final List<Node> others = new ArrayList<Node>();
+
+        private Transitions(int axis){
+            nameStep = new Step(axis, Star.INSTANCE);
+        }
+
+        public Node get(String namespaceURI, String localName){
+            Map<String, Node> localNames = names.get(namespaceURI);
+            return localNames==null ? null : localNames.get(localName);
+        }
+
+        private Node get(Constraint constraint){
+            if(constraint instanceof QName){
+                QName qname = (QName)constraint;
+                return get(qname.namespaceURI, qname.localName);
+            }
+            for(Node node: others){
+                if(node.step.constraint.id==constraint.id)
+                    return node;
+            }
+            return null;
+        }
+
+        private void add(Node node){
+            Constraint constraint = node.step.constraint;
+            if(constraint instanceof QName){
+                QName qname = (QName)constraint;
+                Map<String, Node> localNames = names.get(qname.namespaceURI);
+                if(localNames==null)
+                    names.put(qname.namespaceURI, localNames=new HashMap<String, Node>());
+                localNames.put(qname.localName, node);
+            }else
+                others.add(node);
+        }
+    }
+}
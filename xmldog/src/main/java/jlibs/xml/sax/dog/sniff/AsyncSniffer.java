@@ -0,0 +1,181 @@
+/**
+ * Copyright 2015 Santhosh Kumar Tekuri
+ *
+ * The JLibs authors license this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package jlibs.xml.sax.dog.sniff;
+
+import jlibs.nbp.Feeder;
+import jlibs.xml.sax.SAXProperties;
+import jlibs.xml.sax.async.AsyncXMLReader;
+import jlibs.xml.sax.async.ChannelInputSource;
+
+import javax.xml.xpath.XPathException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Evaluates xpaths in push mode, using {@link AsyncXMLReader}.
+ * <p>
+ * Bytes can be pushed using {@link #feed(ByteBuffer)} followed by {@link #end()},
+ * or pulled from a non-blocking channel using {@link #feed()} whenever it is readable.
+ * No thread is blocked waiting for input, and only one buffer of undecoded bytes
+ * is held apart from xpath state.
+ * <p>
+ * Once the event has found results of all xpaths, input is no longer consumed
+ * and {@link #isDone()} returns true.
+ *
+ * @author Santhosh Kumar T
+ */
+public final class AsyncSniffer{
+    private final Chunks chunks;
+    private Feeder feeder;
+    private boolean finished;
+
+    /**
+     * @param event     event to be notified
+     * @param channel   channel to read from. if null, bytes are pushed using {@link #feed(ByteBuffer)}
+     * @param encoding  encoding of document, null to detect it
+     */
+    public AsyncSniffer(Event event, ReadableByteChannel channel, String encoding) throws XPathException{
+        ChannelInputSource source;
+        if(channel==null){
+            chunks = new Chunks();
+            source = new ChannelInputSource(chunks);
+        }else{
+            chunks = null;
+            source = new ChannelInputSource(channel);
+        }
+        source.setEncoding(encoding);
+
+        AsyncXMLReader reader = new AsyncXMLReader();
+        SAXHandler handler = event.getSAXHandler();
+        reader.setContentHandler(handler);
+        try{
+            reader.setProperty(SAXProperties.LEXICAL_HANDLER, handler);
+            feeder = reader.createFeeder(source);
+        }catch(Exception ex){
+            if(ex!=Event.STOP_PARSING)
+                throw new XPathException(ex);
+            stop();
+        }
+    }
+
+    /**
+     * returns true if document is completely parsed, or
+     * results of all xpaths are found
+     */
+    public boolean isDone(){
+        return feeder==null;
+    }
+
+    /**
+     * returns true if parsing is stopped because results of
+     * all xpaths are found before end of document
+     */
+    public boolean isFinished(){
+        return finished;
+    }
+
+    /**
+     * consumes given bytes. if this returns true, the bytes
+     * remaining in chunk are not required.
+     *
+     * @return value of {@link #isDone()}
+     * @throws IllegalStateException if this sniffer reads from channel
+     */
+    public boolean feed(ByteBuffer chunk) throws XPathException{
+        if(chunks==null)
+            throw new IllegalStateException("AsyncSniffer reads from channel");
+        if(feeder!=null){
+            chunks.chunk = chunk;
+            try{
+                feed();
+            }finally{
+                chunks.chunk = null;
+            }
+        }
+        return feeder==null;
+    }
+
+    /**
+     * notifies that there are no more bytes to be pushed
+     *
+     * @throws IllegalStateException if this sniffer reads from channel
+     */
+    public void end() throws XPathException{
+        if(chunks==null)
+            throw new IllegalStateException("AsyncSniffer reads from channel");
+        chunks.eof = true;
+        feed();
+    }
+
+    /**
+     * consumes bytes until the channel has nothing to read.
+     *
+     * @return value of {@link #isDone()}
+     */
+    public boolean feed() throws XPathException{
+        if(feeder!=null){
+            try{
+                feeder = feeder.feed();
+            }catch(Exception ex){
+                if(ex!=Event.STOP_PARSING && ex.getCause()!=Event.STOP_PARSING)
+                    throw new XPathException(ex);
+                stop();
+            }
+        }
+        return feeder==null;
+    }
+
+    private void stop(){
+        feeder = null;
+        finished = true;
+        if(chunks!=null)
+            chunks.eof = true;
+    }
+
+    /** channel over the chunk currently being fed */
+    private static final class Chunks implements ReadableByteChannel{
+        ByteBuffer chunk;
+        boolean eof;
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException{
+            if(chunk==null || !chunk.hasRemaining())
+                return eof ? -1 : 0;
+            int read = Math.min(chunk.remaining(), dst.remaining());
+            if(read==chunk.remaining())
+                dst.put(chunk);
+            else{
+                int limit = chunk.limit();
+                chunk.limit(chunk.position()+read);
+                dst.put(chunk);
+                chunk.limit(limit);
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen(){
+            return !eof;
+        }
+
+        @Override
+        public void close() throws IOException{
+            eof = true;
+        }
+    }
+}
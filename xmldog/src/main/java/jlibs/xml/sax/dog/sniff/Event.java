@@ -26,6 +26,7 @@ import jlibs.xml.sax.dog.expr.*;
 import jlibs.xml.sax.dog.expr.nodset.NodeSet;
 import jlibs.xml.sax.dog.expr.nodset.NodeSetListener;
 import jlibs.xml.sax.dog.expr.nodset.PositionTracker;
+import jlibs.xml.sax.dog.expr.nodset.PrefixTreeEvaluation;
 import jlibs.xml.sax.dog.expr.nodset.StringEvaluation;
 import jlibs.xml.sax.dog.path.EventID;
 import jlibs.xml.sax.helpers.MyNamespaceSupport;
@@ -60,6 +61,44 @@ public final class Event extends EvaluationListener implements NodeSetListener{
         handler = new SAXHandler(this, langInterested);
     }
 
+    /**
+     * clears all state of previous document, so that this event
+     * can be reused to sniff another document.
+     * <p>
+     * listener and xml builder are also cleared, and can be set again
+     */
+    @SuppressWarnings({"unchecked"})
+    public void reset(){
+        Arrays.fill(results, null);
+        Arrays.fill(pendingInstantResults, 0);
+        Arrays.fill(listeners, null);
+        Arrays.fill(instantListenersCount, 0);
+        finished.clear();
+        for(EventID.ConstraintEntry entries[]: listenersArray)
+            Arrays.fill(entries, null);
+        pendingExpressions = 0;
+        prefixTreeEvaluation = null;
+        stopped = false;
+        listener = null;
+        xmlBuilder = null;
+
+        order = 0L;
+        type = 0;
+        value = namespaceURI = localName = qualifiedName = null;
+        nodeItem = null;
+        current = null;
+        interestedInAttributes = interestedInNamespaces = interestedInText = false;
+
+        nsContext = null;
+        tailInfo = locationInfo = null;
+        elementLocation.setLength(0);
+        buff.setLength(0);
+
+        evaluation = null;
+        positionTrackerStack.clear();
+        stringEvaluation = null;
+    }
+
     public NamespaceContext getNamespaceContext(){
         return nsContext;
     }
@@ -98,11 +137,33 @@ public final class Event extends EvaluationListener implements NodeSetListener{
     }
 
     public String value(){
-        if(type==NodeType.TEXT && value==null)
-            value = buff.length()>0 ? buff.toString() : null;
+        if(value==null){
+            if(type==NodeType.TEXT)
+                value = buff.length()>0 ? buff.toString() : null;
+            else if(type==NodeType.COMMENT && commentChars!=null)
+                value = new String(commentChars, commentStart, commentLength);
+        }
         return value;
     }
 
+    /** same as {@code str.equals(value())}, but doesn't create string for text and comment */
+    public boolean valueEquals(String str){
+        if(value==null){
+            if(type==NodeType.TEXT)
+                return buff.length()>0 && str.contentEquals(buff);
+            else if(type==NodeType.COMMENT && commentChars!=null){
+                if(str.length()!=commentLength)
+                    return false;
+                for(int i=0; i<commentLength; i++){
+                    if(str.charAt(i)!=commentChars[commentStart+i])
+                        return false;
+                }
+                return true;
+            }
+        }
+        return str.equals(value());
+    }
+
     public String language(){
         return tailInfo==null ? "" : tailInfo.lang;
     }
@@ -285,6 +346,24 @@ public final class Event extends EvaluationListener implements NodeSetListener{
         this.interestedInText = interestedInText;
     }
 
+    /**
+     * tells if the content of element just started can be skipped.
+     * this is true when none of the pending evaluations can be affected by
+     * nodes inside that element, i.e, no active eventID is listening on
+     * child, descendant or following axis.
+     * <p>
+     * should be called after attributes and namespaces are notified
+     */
+    public boolean canSkipContent(){
+        if(stopped || xmlBuilder!=null)
+            return false;
+        for(EventID id=current; id!=null; id=id.previous){
+            if(id.isInterestedInContent())
+                return false;
+        }
+        return true;
+    }
+
     /*-------------------------------------------------[ NodeItem ]---------------------------------------------------*/
 
     private NodeItem nodeItem;
@@ -535,7 +614,9 @@ public final class Event extends EvaluationListener implements NodeSetListener{
     }
 
     public void onStartDocument(){
+        nsContext = new DefaultNamespaceContext();
         if(listener!=null){
+            listener.startDocument(nsContext);
             for(Expression expr: globalExprList)
                 listener.finished(new StaticEvaluation<Expression>(expr, -1, expr.getResult()));
         }
@@ -544,7 +625,7 @@ public final class Event extends EvaluationListener implements NodeSetListener{
         if(noOfXPaths==0)
             throw STOP_PARSING;
         pendingExpressions = noOfXPaths;
-        nsContext = new DefaultNamespaceContext();
+        prefixTreeEvaluation = null;
         locationInfo = tailInfo = new Info();
         tailInfo.lang = "";
         tailInfo.slash = 0;
@@ -633,11 +714,23 @@ public final class Event extends EvaluationListener implements NodeSetListener{
         }
     }
 
+    // comment text is valid only during onComment(...), and is
+    // turned into string only if some evaluation asks for value
+    private char commentChars[];
+    private int commentStart, commentLength;
+
     public void onComment(char[] ch, int start, int length){
         if(!stopped)
             tailInfo.commentCount++;
-        onEvent(NodeType.COMMENT, "", "", "", new String(ch, start, length));
-        notifyXMLBuilder();
+        commentChars = ch;
+        commentStart = start;
+        commentLength = length;
+        try{
+            onEvent(NodeType.COMMENT, "", "", "", null);
+            notifyXMLBuilder();
+        }finally{
+            commentChars = null;
+        }
     }
 
     public void onPI(String target, String data){
@@ -822,4 +915,5 @@ public final class Event extends EvaluationListener implements NodeSetListener{
 
     public ArrayDeque<PositionTracker> positionTrackerStack = new ArrayDeque<PositionTracker>();
     public StringEvaluation stringEvaluation;
+    public PrefixTreeEvaluation prefixTreeEvaluation;
 }
@@ -17,12 +17,20 @@
 package jlibs.xml.sax.dog.sniff;
 
 import jlibs.xml.Namespaces;
+import jlibs.xml.sax.async.AsyncXMLReader;
 import jlibs.xml.sax.helpers.MyNamespaceSupport;
 import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.ext.DefaultHandler2;
 
 /**
+ * Feeds SAX events to {@link Event}.
+ * <p>
+ * content of elements, which can't affect any pending evaluation, is skipped.
+ * if the parser is {@link AsyncXMLReader}, it is asked to skip the content.
+ * otherwise the events from such content are ignored.
+ *
  * @author Santhosh Kumar T
  */
 public final class SAXHandler extends DefaultHandler2{
@@ -34,20 +42,50 @@ public final class SAXHandler extends DefaultHandler2{
         this.langInterested = langInterested;
     }
 
+    private Locator locator;
+
+    @Override
+    public void setDocumentLocator(Locator locator){
+        this.locator = locator;
+    }
+
     public void startDocument() throws SAXException{
+        asyncReader = locator instanceof AsyncXMLReader ? (AsyncXMLReader)locator : null;
+        locator = null;
+        skipDepth = 0;
         nsSupport.startDocument();
         event.onStartDocument();
     }
 
+    /*-------------------------------------------------[ Skip ]---------------------------------------------------*/
+
+    private AsyncXMLReader asyncReader;
+
+    // depth inside element whose content is being ignored, zero if not ignoring
+    private int skipDepth;
+
+    private void skipContent(){
+        if(asyncReader!=null)
+            asyncReader.skipContent();
+        else
+            skipDepth = 1;
+    }
+
     private final MyNamespaceSupport nsSupport = new MyNamespaceSupport();
 
     @Override
     public void startPrefixMapping(String prefix, String uri) throws SAXException{
+        if(skipDepth!=0)
+            return;
         nsSupport.startPrefixMapping(prefix, uri);
     }
 
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attrs) throws SAXException{
+        if(skipDepth!=0){
+            skipDepth++;
+            return;
+        }
         nsSupport.startElement();
 
         Event event = this.event;
@@ -55,15 +93,20 @@ public final class SAXHandler extends DefaultHandler2{
         event.onStartElement(uri, localName, qName, langInterested ? attrs.getValue(Namespaces.URI_XML, "lang") : null);
         event.onNamespaces(nsSupport);
         event.onAttributes(attrs);
+        if(event.canSkipContent())
+            skipContent();
     }
 
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException{
-        event.appendText(ch, start, length);
+        if(skipDepth==0)
+            event.appendText(ch, start, length);
     }
 
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException{
+        if(skipDepth!=0 && --skipDepth!=0)
+            return;
         nsSupport.endElement();
 
         event.onText();
@@ -77,12 +120,16 @@ public final class SAXHandler extends DefaultHandler2{
 
     @Override
     public void processingInstruction(String target, String data) throws SAXException{
+        if(skipDepth!=0)
+            return;
         event.onText();
         event.onPI(target, data);
     }
 
     @Override
     public void comment(char[] ch, int start, int length) throws SAXException{
+        if(skipDepth!=0)
+            return;
         event.onText();
         event.onComment(ch, start, length);
     }
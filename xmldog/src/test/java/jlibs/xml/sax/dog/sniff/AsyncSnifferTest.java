@@ -0,0 +1,122 @@
+/**
+ * Copyright 2015 Santhosh Kumar Tekuri
+ *
+ * The JLibs authors license this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package jlibs.xml.sax.dog.sniff;
+
+import jlibs.xml.DefaultNamespaceContext;
+import jlibs.xml.sax.dog.XMLDog;
+import jlibs.xml.sax.dog.XPathResults;
+import jlibs.xml.sax.dog.expr.Expression;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * checks that pushing a document in chunks of any size gives
+ * same results as sniffing it from InputSource
+ *
+ * @author Santhosh Kumar Tekuri
+ */
+public class AsyncSnifferTest{
+    @DataProvider(name="documents")
+    public Object[][] documents() throws Exception{
+        return new Object[][]{
+            {
+                "<?xml version=\"1.0\"?>\n"
+               +"<e1 xml:lang=\"hr\">\n"
+               +"  <e2 xml:lang=\"en-US\"><e3/></e2>\n"
+               +"  <e2 xml:lang=\"hu\"><e3/><e3/><e3 xml:lang=\"es\"/></e2>\n"
+               +"</e1>",
+                "UTF-8",
+                new String[]{ "/e1/e2[lang('hr')]", "/e1/e2/e3[lang('en')]", "/e1/e2/e3[lang('hu')]", "/e1/e2/e3[lang('es')]" }
+            },
+            {
+                "<?xml version=\"1.0\" encoding=\"ISO-8859-1\" standalone=\"yes\"?>\n"
+               +"<!-- prices -->\n"
+               +"<?pi data?>\n"
+               +"<x:catalog xmlns:x=\"urn:x\" xmlns=\"urn:default\">\n"
+               +"  <item id=\"1\" x:currency=\"\u00A3\">caf\u00E9 cr\u00E8me</item>\n"
+               +"  <item id=\"2\"><![CDATA[<na\u00EFve>]]></item>\n"
+               +"</x:catalog>",
+                "ISO-8859-1",
+                new String[]{ "/x:catalog/d:item/@id", "//d:item/text()", "//@x:currency", "//comment()", "//processing-instruction()", "count(//d:item)", "namespace-uri(/*)" }
+            },
+            {
+                "<root><a>1</a><b>2</b><a>3</a></root>",
+                "UTF-8",
+                new String[]{ "/root/a", "sum(/root/a)", "/root/b/text()" }
+            },
+        };
+    }
+
+    private static String toString(XPathResults results, List<Expression> expressions){
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bout);
+        results.print(expressions, ps);
+        ps.flush();
+        return bout.toString();
+    }
+
+    private static String push(XMLDog dog, List<Expression> expressions, byte bytes[], int chunkSizes[]) throws Exception{
+        Event event = dog.createEvent();
+        XPathResults results = new XPathResults(event);
+        event.setListener(results);
+        AsyncSniffer sniffer = dog.sniff(event, (String)null);
+        int pos = 0;
+        for(int i=0; pos<bytes.length && !sniffer.isDone(); i++){
+            int len = Math.min(chunkSizes[i%chunkSizes.length], bytes.length-pos);
+            sniffer.feed(ByteBuffer.wrap(bytes, pos, len));
+            pos += len;
+        }
+        sniffer.end();
+        Assert.assertTrue(sniffer.isDone());
+        return toString(results, expressions);
+    }
+
+    @Test(dataProvider="documents")
+    public void chunked(String xml, String encoding, String xpaths[]) throws Exception{
+        DefaultNamespaceContext nsContext = new DefaultNamespaceContext();
+        nsContext.declarePrefix("x", "urn:x");
+        nsContext.declarePrefix("d", "urn:default");
+        XMLDog dog = new XMLDog(nsContext);
+        List<Expression> expressions = new ArrayList<Expression>();
+        for(String xpath: xpaths)
+            expressions.add(dog.addXPath(xpath));
+
+        byte bytes[] = xml.getBytes(encoding);
+        String expected = toString(dog.sniff(new InputSource(new ByteArrayInputStream(bytes))), expressions);
+
+        for(int size=1; size<=bytes.length; size++)
+            Assert.assertEquals(push(dog, expressions, bytes, new int[]{ size }), expected, "chunk size "+size);
+
+        Random random = new Random(xml.hashCode());
+        for(int run=0; run<50; run++){
+            int chunkSizes[] = new int[1+random.nextInt(10)];
+            for(int i=0; i<chunkSizes.length; i++)
+                chunkSizes[i] = 1+random.nextInt(16);
+            Assert.assertEquals(push(dog, expressions, bytes, chunkSizes), expected, "random run "+run);
+        }
+    }
+}